@@ -17,13 +17,19 @@ package com.zhihu.matisse;
 
 import android.app.Activity;
 import android.content.Intent;
+import android.graphics.Bitmap;
 import android.net.Uri;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 
+import com.zhihu.matisse.filter.Filter;
+import com.zhihu.matisse.filter.FilterStats;
+import com.zhihu.matisse.internal.model.FilterChain;
+import com.zhihu.matisse.internal.model.ThumbnailHandoff;
 import com.zhihu.matisse.ui.MatisseActivity;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
@@ -96,10 +102,88 @@ public final class Matisse {
         return data.getStringArrayListExtra(MatisseActivity.EXTRA_RESULT_SELECTION_PATH);
     }
 
+    /**
+     * Obtain user selected media with their type, size, dimensions, orientation and duration in the starting
+     * Activity or Fragment, no need to query the media provider again.
+     *
+     * @param data Intent passed by {@link Activity#onActivityResult(int, int, Intent)} or
+     *             {@link Fragment#onActivityResult(int, int, Intent)}.
+     * @return User selected media in the order they were selected, empty if the result has none, e.g. the one
+     * of a capture.
+     */
+    public static List<SelectedItem> obtainItemsResult(Intent data) {
+        List<SelectedItem> items = data.getParcelableArrayListExtra(MatisseActivity.EXTRA_RESULT_SELECTION_ITEMS);
+        return items != null ? items : new ArrayList<SelectedItem>();
+    }
+
+    /**
+     * Obtain the outputs the {@link com.zhihu.matisse.processor.Processor} of the selection finished before the
+     * user applied, see {@link SelectionCreator#setProcessor(com.zhihu.matisse.processor.Processor, int, long)}.
+     * The files are the caller's to move or delete, those left are deleted when the next selection starts.
+     *
+     * @param data Intent passed by {@link Activity#onActivityResult(int, int, Intent)} or
+     *             {@link Fragment#onActivityResult(int, int, Intent)}.
+     * @return Output path of each of {@link #obtainResult(Intent)}, null for the media not processed in time,
+     * empty if the selection has no processor.
+     */
+    public static List<String> obtainProcessedResult(Intent data) {
+        List<String> paths = data.getStringArrayListExtra(MatisseActivity.EXTRA_RESULT_PROCESSED_PATH);
+        return paths != null ? paths : new ArrayList<String>();
+    }
+
+    /**
+     * Obtain the SHA-256 digests of the selected media, see {@link SelectionCreator#computeDigests(boolean)}.
+     *
+     * @param data Intent passed by {@link Activity#onActivityResult(int, int, Intent)} or
+     *             {@link Fragment#onActivityResult(int, int, Intent)}.
+     * @return Digest of each of {@link #obtainResult(Intent)} as lowercase hex, null for the media which could not
+     * be read, empty if digests were not asked for.
+     */
+    public static List<String> obtainDigestResult(Intent data) {
+        List<String> digests = data.getStringArrayListExtra(MatisseActivity.EXTRA_RESULT_DIGESTS);
+        return digests != null ? digests : new ArrayList<String>();
+    }
+
+    /**
+     * Obtain the thumbnail the picker showed for a selected media, so that it can be shown without decoding it
+     * again. Valid until {@link #releaseThumbnails()} or the next selection, don't recycle it.
+     *
+     * @param uri One of {@link #obtainResult(Intent)}.
+     * @return Thumbnail as the grid cropped it, null if the picker has none, e.g. never on screen.
+     */
+    @Nullable
+    public static Bitmap obtainThumbnail(Uri uri) {
+        return ThumbnailHandoff.getInstance().get(uri);
+    }
+
+    /**
+     * Let go of the thumbnails kept for {@link #obtainThumbnail(Uri)} once they are no longer needed.
+     */
+    public static void releaseThumbnails() {
+        ThumbnailHandoff.getInstance().release();
+    }
+
     public static int obtainRemovedItemsCount(Intent data) {
         return data.getIntExtra(MatisseActivity.EXTRA_RESULT_DELETED_ITEM_COUNT, 0);
     }
 
+    /**
+     * Obtain how many JPEGs were left out of the result because their metadata could not be stripped, see
+     * {@link SelectionCreator#stripMetadata(boolean)}.
+     */
+    public static int obtainUnstrippedItemsCount(Intent data) {
+        return data.getIntExtra(MatisseActivity.EXTRA_RESULT_UNSTRIPPED_ITEM_COUNT, 0);
+    }
+
+    /**
+     * Obtain how the {@link Filter}s added to the current selection performed, e.g. to find the slow ones.
+     *
+     * @return One entry per {@link Filter}, in the order they currently run.
+     */
+    public static List<FilterStats> getFilterStats() {
+        return FilterChain.getInstance().getStats();
+    }
+
     /**
      * MIME types the selection constrains on.
      * <p>
@@ -141,7 +225,15 @@ public final class Matisse {
         return mFragment != null ? mFragment.get() : null;
     }
 
+    /**
+     * Obtain whether the user asked for the original images, if not {@link #obtainResult(Intent)} has downscaled
+     * copies of them, see {@link SelectionCreator#originalEnable(boolean)}.
+     *
+     * @param data Intent passed by {@link Activity#onActivityResult(int, int, Intent)} or
+     *             {@link Fragment#onActivityResult(int, int, Intent)}.
+     * @return Whether the original images were asked for.
+     */
     public static boolean useOriginImage(Intent data) {
-        return false;
+        return data.getBooleanExtra(MatisseActivity.EXTRA_RESULT_ORIGINAL_ENABLE, false);
     }
 }
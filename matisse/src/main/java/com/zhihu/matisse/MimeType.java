@@ -29,7 +29,9 @@ import com.zhihu.matisse.internal.utils.PhotoMetadataUtils;
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * MIME Type enumeration to restrict selectable media on the selection activity. Matisse only supports images and
@@ -41,6 +43,8 @@ import java.util.Set;
 @SuppressWarnings("unused")
 public enum MimeType {
 
+    // every constant is a bit in mask(), at most 32 of them fit, see the check below
+
     // ============== images ==============
     JPEG("image/jpeg", arraySetOf(
             "jpg",
@@ -100,6 +104,16 @@ public enum MimeType {
             "avi"
     ));
 
+    // MIME type name to mask, the media provider only reports a handful of distinct names
+    private static final Map<String, Integer> sMasks = new ConcurrentHashMap<>();
+
+    static {
+        // mask() is an int bit per constant, more than 32 types need the masks widened to long
+        if (values().length > Integer.SIZE) {
+            throw new AssertionError("MimeType masks hold " + Integer.SIZE + " types at most");
+        }
+    }
+
     private final String mMimeTypeName;
     private final Set<String> mExtensions;
 
@@ -136,6 +150,77 @@ public enum MimeType {
         return new ArraySet<>(Arrays.asList(suffixes));
     }
 
+    /**
+     * @return the bit of this type in the masks below.
+     */
+    public int mask() {
+        return 1 << ordinal();
+    }
+
+    public static int maskOf(Set<MimeType> types) {
+        int mask = 0;
+        for (MimeType type : types) {
+            mask |= type.mask();
+        }
+        return mask;
+    }
+
+    /**
+     * Resolves a MIME type name once to the mask of the types it matches, either by name or by the extension
+     * {@link MimeTypeMap} gives for it, the same way {@link #checkType(ContentResolver, Uri)} does.
+     *
+     * @return 0 if no type matches.
+     */
+    public static int maskOf(String mimeTypeName) {
+        if (mimeTypeName == null) {
+            return 0;
+        }
+        Integer mask = sMasks.get(mimeTypeName);
+        if (mask == null) {
+            String extension = MimeTypeMap.getSingleton().getExtensionFromMimeType(mimeTypeName);
+            int bits = 0;
+            for (MimeType type : values()) {
+                if (type.mMimeTypeName.equals(mimeTypeName)
+                        || (extension != null && type.mExtensions.contains(extension))) {
+                    bits |= type.mask();
+                }
+            }
+            mask = bits;
+            sMasks.put(mimeTypeName, mask);
+        }
+        return mask;
+    }
+
+    /**
+     * @return mask of the types claiming the extension of {@code path}, 0 if none.
+     */
+    public static int maskOfPath(String path) {
+        int dot = path == null ? -1 : path.lastIndexOf('.');
+        if (dot == -1) {
+            return 0;
+        }
+        String extension = path.substring(dot + 1).toLowerCase(Locale.US);
+        int mask = 0;
+        for (MimeType type : values()) {
+            if (type.mExtensions.contains(extension)) {
+                mask |= type.mask();
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * @return the MIME type name of the first type in {@code mask}, null if none.
+     */
+    public static String nameOf(int mask) {
+        for (MimeType type : values()) {
+            if ((mask & type.mask()) != 0) {
+                return type.mMimeTypeName;
+            }
+        }
+        return null;
+    }
+
     public static boolean isImage(String mimeType) {
         if (mimeType == null) return false;
         return mimeType.startsWith("image");
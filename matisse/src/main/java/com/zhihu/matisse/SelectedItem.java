@@ -0,0 +1,115 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse;
+
+import android.net.Uri;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import androidx.annotation.Nullable;
+
+/**
+ * A chosen media with what the picker already knows of it, see
+ * {@link Matisse#obtainItemsResult(android.content.Intent)}. Values which are not known are 0.
+ */
+@SuppressWarnings("unused")
+public final class SelectedItem implements Parcelable {
+
+    public static final Creator<SelectedItem> CREATOR = new Creator<SelectedItem>() {
+        @Override
+        public SelectedItem createFromParcel(Parcel source) {
+            return new SelectedItem(source);
+        }
+
+        @Override
+        public SelectedItem[] newArray(int size) {
+            return new SelectedItem[size];
+        }
+    };
+
+    public final Uri uri;
+    @Nullable
+    public final String path;
+    public final String mimeType;
+    public final long size; // in bytes
+    // as stored, before orientation is applied
+    public final int width;
+    public final int height;
+    public final int orientation; // in degrees, clockwise
+    public final long duration; // in ms, videos only
+    public final long dateTaken; // in ms
+    public final long dateModified; // in seconds
+
+    public SelectedItem(Uri uri, @Nullable String path, String mimeType, long size, int width, int height,
+                        int orientation, long duration, long dateTaken, long dateModified) {
+        this.uri = uri;
+        this.path = path;
+        this.mimeType = mimeType;
+        this.size = size;
+        this.width = width;
+        this.height = height;
+        this.orientation = orientation;
+        this.duration = duration;
+        this.dateTaken = dateTaken;
+        this.dateModified = dateModified;
+    }
+
+    private SelectedItem(Parcel source) {
+        uri = source.readParcelable(Uri.class.getClassLoader());
+        path = source.readString();
+        mimeType = source.readString();
+        size = source.readLong();
+        width = source.readInt();
+        height = source.readInt();
+        orientation = source.readInt();
+        duration = source.readLong();
+        dateTaken = source.readLong();
+        dateModified = source.readLong();
+    }
+
+    /**
+     * @return width as displayed, with orientation applied.
+     */
+    public int getDisplayWidth() {
+        return orientation % 180 == 0 ? width : height;
+    }
+
+    /**
+     * @return height as displayed, with orientation applied.
+     */
+    public int getDisplayHeight() {
+        return orientation % 180 == 0 ? height : width;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeParcelable(uri, flags);
+        dest.writeString(path);
+        dest.writeString(mimeType);
+        dest.writeLong(size);
+        dest.writeInt(width);
+        dest.writeInt(height);
+        dest.writeInt(orientation);
+        dest.writeLong(duration);
+        dest.writeLong(dateTaken);
+        dest.writeLong(dateModified);
+    }
+}
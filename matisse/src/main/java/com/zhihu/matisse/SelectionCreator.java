@@ -23,6 +23,7 @@ import android.os.Build;
 
 import androidx.annotation.FloatRange;
 import androidx.annotation.IntDef;
+import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
@@ -35,12 +36,19 @@ import com.zhihu.matisse.internal.entity.CaptureStrategy;
 import com.zhihu.matisse.internal.entity.Item;
 import com.zhihu.matisse.internal.entity.SelectionSpec;
 import com.zhihu.matisse.internal.loader.AlbumMediaLoader;
+import com.zhihu.matisse.internal.model.ProcessingPipeline;
 import com.zhihu.matisse.internal.model.SelectedItemCollection;
+import com.zhihu.matisse.internal.model.ThumbnailHandoff;
 import com.zhihu.matisse.listener.OnCheckedListener;
+import com.zhihu.matisse.listener.OnResultListener;
 import com.zhihu.matisse.listener.OnSelectedListener;
+import com.zhihu.matisse.listener.OnSelectionChangedListener;
 import com.zhihu.matisse.listener.SelectionDelegate;
+import com.zhihu.matisse.processor.Processor;
 import com.zhihu.matisse.ui.MatisseActivity;
+import com.zhihu.matisse.ui.MatisseFragment;
 
+import java.io.File;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
@@ -105,8 +113,12 @@ public final class SelectionCreator {
         mMatisse = matisse;
         mSelectionSpec = SelectionSpec.getCleanInstance();
         mSelectionSpec.mimeTypeSet = mimeTypes;
+        mSelectionSpec.mimeTypeMask = MimeType.maskOf(mimeTypes);
         mSelectionSpec.mediaTypeExclusive = mediaTypeExclusive;
         mSelectionSpec.orientation = SCREEN_ORIENTATION_UNSPECIFIED;
+        // a new pick, the thumbnails handed off for the last one are not asked for anymore
+        ThumbnailHandoff.getInstance().release();
+        ProcessingPipeline.getInstance().reset();
     }
 
     /**
@@ -211,7 +223,8 @@ public final class SelectionCreator {
     }
 
     /**
-     * Show a original photo check options.Let users decide whether use original photo after select
+     * Show a original photo check options.Let users decide whether use original photo after select. When
+     * unchecked, downscaled copies of the images are returned instead, see {@link #optimizedImageSize(int, int)}.
      *
      * @param enable Whether to enable original photo or not
      * @return {@link SelectionCreator} for fluent API.
@@ -233,7 +246,8 @@ public final class SelectionCreator {
     }
 
     /**
-     * Maximum original size,the unit is MB. Only useful when {link@originalEnable} set true
+     * Maximum original size,the unit is MB. Only useful when {@link #originalEnable(boolean)} set true, larger
+     * images are downscaled even if the user asks for the originals.
      *
      * @param size Maximum original size. Default value is Integer.MAX_VALUE
      * @return {@link SelectionCreator} for fluent API.
@@ -243,6 +257,71 @@ public final class SelectionCreator {
         return this;
     }
 
+    /**
+     * Whether to return copies of the JPEG images without their metadata, e.g. their GPS location, but their
+     * orientation. The copies are made without decoding the images, in the cache directory of the app. Captured
+     * photos and videos are then not given a location in the media provider either. JPEGs which cannot be
+     * stripped are left out of the result, see {@link Matisse#obtainUnstrippedItemsCount(Intent)}. Default value
+     * is false.
+     *
+     * @param strip Whether to strip metadata.
+     * @return {@link SelectionCreator} for fluent API.
+     */
+    public SelectionCreator stripMetadata(boolean strip) {
+        mSelectionSpec.stripMetadata = strip;
+        return this;
+    }
+
+    /**
+     * Whether to return the SHA-256 digest of each media, e.g. to skip uploading what was uploaded before. Media
+     * are digested in the background as they are checked, digests are remembered for the next selections. See
+     * {@link Matisse#obtainDigestResult(Intent)}. Default value is false.
+     *
+     * @param compute Whether to compute digests.
+     * @return {@link SelectionCreator} for fluent API.
+     */
+    public SelectionCreator computeDigests(boolean compute) {
+        mSelectionSpec.computeDigests = compute;
+        return this;
+    }
+
+    /**
+     * Copy the chosen media into a directory of the app and return the paths of the copies, which the app can
+     * always read unlike the ones of the media provider from Android 10 (Q). Media copied before are not copied
+     * again. The progress is shown while copying. Default value is null, paths of the media provider.
+     *
+     * @param directory Directory of the app to copy to, e.g. under {@link android.content.Context#getFilesDir()}.
+     *                  null to not copy.
+     * @param maxCopies Maximum number of media copied at a time, each copy on a thread of its own.
+     * @return {@link SelectionCreator} for fluent API.
+     */
+    public SelectionCreator importInto(@Nullable File directory, int maxCopies) {
+        if (maxCopies < 1) {
+            throw new IllegalArgumentException("maxCopies must be greater than or equal to one");
+        }
+        mSelectionSpec.importDirectory = directory;
+        mSelectionSpec.importThreads = maxCopies;
+        return this;
+    }
+
+    /**
+     * Size and quality of the copies returned instead of the images the user did not ask the originals of, in
+     * the cache directory of the app. Smaller images keep their size. Only useful when
+     * {@link #originalEnable(boolean)} set true.
+     *
+     * @param longEdge Longest side of the copies in pixels. Default value is 2048.
+     * @param quality  JPEG quality of the copies, 0 to 100. Default value is 85.
+     * @return {@link SelectionCreator} for fluent API.
+     */
+    public SelectionCreator optimizedImageSize(int longEdge, @IntRange(from = 0, to = 100) int quality) {
+        if (longEdge < 1) {
+            throw new IllegalArgumentException("longEdge must be greater than or equal to one");
+        }
+        mSelectionSpec.optimizeLongEdge = longEdge;
+        mSelectionSpec.optimizeQuality = quality;
+        return this;
+    }
+
     /**
      * Capture strategy provided for the location to save photos including internal and external
      * storage and also a authority for {@link androidx.core.content.FileProvider}.
@@ -340,6 +419,19 @@ public final class SelectionCreator {
         return this;
     }
 
+    /**
+     * Set listener told about each item the user selects or deselects while the picker is open, e.g. to start
+     * uploading them before the user is done.
+     *
+     * @param listener {@link OnSelectionChangedListener}
+     * @return {@link SelectionCreator} for fluent API.
+     */
+    @NonNull
+    public SelectionCreator setOnSelectionChangedListener(@Nullable OnSelectionChangedListener listener) {
+        mSelectionSpec.onSelectionChangedListener = listener;
+        return this;
+    }
+
     /**
      * Set listener for callback immediately when user check or uncheck original.
      *
@@ -440,6 +532,23 @@ public final class SelectionCreator {
         forResult(requestCode, null);
     }
 
+    /**
+     * Create a {@link MatisseFragment} to select media inside the caller's own Activity instead of
+     * launching {@link MatisseActivity}. The parent Fragment or the Activity hosting it must implement
+     * {@link OnResultListener}.
+     *
+     * @param selectedUris Media to be checked when the picker shows up, may be null.
+     * @return {@link MatisseFragment} to be added by the caller.
+     */
+    public MatisseFragment forFragment(@Nullable List<Uri> selectedUris) {
+        ArrayList<Item> selection = null;
+        Activity activity = mMatisse.getActivity();
+        if (activity != null && selectedUris != null && selectedUris.size() > 0) {
+            selection = AlbumMediaLoader.querySelection(activity, selectedUris);
+        }
+        return MatisseFragment.newInstance(selection);
+    }
+
     /**
      * when selection event emit register can observe
      * @param delegate
@@ -454,4 +563,59 @@ public final class SelectionCreator {
         mSelectionSpec.showPreview = showPreview;
         return this;
     }
+
+    /**
+     * Whether to group the media grid under month headers and show a fast scroller which jumps between
+     * months and shows the month being dragged to. Default value is false.
+     *
+     * @param show Whether to show date sections.
+     * @return {@link SelectionCreator} for fluent API.
+     */
+    public SelectionCreator showDateSections(boolean show) {
+        mSelectionSpec.showDateSections = show;
+        return this;
+    }
+
+    /**
+     * Order of media in the grid and of albums in the album list. Month sections are only shown for the
+     * date taken orders. Default value is {@link SortOrder#DATE_TAKEN_DESC}.
+     *
+     * @param order Initial sort order.
+     * @return {@link SelectionCreator} for fluent API.
+     */
+    public SelectionCreator sortOrder(SortOrder order) {
+        mSelectionSpec.sortOrder = order;
+        return this;
+    }
+
+    /**
+     * Whether to let user switch the sort order from the toolbar. Default value is false.
+     *
+     * @param show Whether to show the sort menu.
+     * @return {@link SelectionCreator} for fluent API.
+     */
+    public SelectionCreator showSortMenu(boolean show) {
+        mSelectionSpec.showSortMenu = show;
+        return this;
+    }
+
+    /**
+     * Processor to run on each media as soon as the user checks it, so that the work is mostly done by the time
+     * the user applies. Outputs finished by then are returned with the result, see
+     * {@link Matisse#obtainProcessedResult(Intent)}. Default value is null, no processing.
+     *
+     * @param processor  {@link Processor} to run.
+     * @param threads    Maximum number of media processed at a time.
+     * @param diskBudget Maximum number of bytes the outputs may take in all, outputs beyond it are dropped.
+     * @return {@link SelectionCreator} for fluent API.
+     */
+    public SelectionCreator setProcessor(@Nullable Processor processor, int threads, long diskBudget) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be greater than or equal to one");
+        }
+        mSelectionSpec.processor = processor;
+        mSelectionSpec.processingThreads = threads;
+        mSelectionSpec.processingDiskBudget = diskBudget;
+        return this;
+    }
 }
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse;
+
+import android.provider.MediaStore;
+
+/**
+ * Order of the media in the grid and of the albums in the album list. The sort is done by the media
+ * provider, ties are broken by row id so the order is stable.
+ */
+public enum SortOrder {
+
+    DATE_TAKEN_DESC(MediaStore.Images.Media.DATE_TAKEN, false),
+    DATE_TAKEN_ASC(MediaStore.Images.Media.DATE_TAKEN, true),
+    DATE_ADDED_DESC(MediaStore.MediaColumns.DATE_ADDED, false),
+    DATE_ADDED_ASC(MediaStore.MediaColumns.DATE_ADDED, true),
+    SIZE_DESC(MediaStore.MediaColumns.SIZE, false),
+    SIZE_ASC(MediaStore.MediaColumns.SIZE, true),
+    DISPLAY_NAME_ASC(MediaStore.MediaColumns.DISPLAY_NAME, true),
+    DISPLAY_NAME_DESC(MediaStore.MediaColumns.DISPLAY_NAME, false);
+
+    private final String mColumn;
+    private final boolean mAscending;
+    private final String mOrderBy;
+
+    SortOrder(String column, boolean ascending) {
+        mColumn = column;
+        mAscending = ascending;
+        String direction = ascending ? " ASC" : " DESC";
+        mOrderBy = column + direction + ", " + MediaStore.Files.FileColumns._ID + direction;
+    }
+
+    public String getColumn() {
+        return mColumn;
+    }
+
+    public boolean isAscending() {
+        return mAscending;
+    }
+
+    /**
+     * @return ORDER BY clause for the media provider.
+     */
+    public String getOrderBy() {
+        return mOrderBy;
+    }
+
+    public boolean isByDateTaken() {
+        return MediaStore.Images.Media.DATE_TAKEN.equals(mColumn);
+    }
+}
@@ -17,6 +17,8 @@ package com.zhihu.matisse.filter;
 
 import android.content.Context;
 
+import androidx.annotation.WorkerThread;
+
 import com.zhihu.matisse.MimeType;
 import com.zhihu.matisse.SelectionCreator;
 import com.zhihu.matisse.internal.entity.Item;
@@ -42,6 +44,18 @@ public abstract class Filter {
      * Convenient constant for 1024.
      */
     public static final int K = 1024;
+    /**
+     * Cost class of a filter which only looks at the {@link Item} fields.
+     */
+    public static final int COST_CHEAP = 0;
+    /**
+     * Cost class of a filter which queries the media provider or reads little of the file.
+     */
+    public static final int COST_MODERATE = 1;
+    /**
+     * Cost class of a filter which decodes or reads much of the file.
+     */
+    public static final int COST_EXPENSIVE = 2;
 
     /**
      * Against what mime types this filter applies.
@@ -49,21 +63,34 @@ public abstract class Filter {
     protected abstract Set<MimeType> constraintTypes();
 
     /**
-     * Invoked for filtering each item.
+     * Invoked for filtering each item. Called on a background thread, never the main one, so it may read the
+     * file but must not touch views.
      *
      * @return null if selectable, {@link IncapableCause} if not selectable.
      */
+    @WorkerThread
     public abstract IncapableCause filter(Context context, Item item);
 
+    /**
+     * How much one {@link #filter(Context, Item)} costs, one of {@link #COST_CHEAP}, {@link #COST_MODERATE} and
+     * {@link #COST_EXPENSIVE}. Filters are run cheapest first until timings are known, so override it for the
+     * slow ones. The first cause found is reported, so the order must not matter to the result.
+     */
+    public int cost() {
+        return COST_MODERATE;
+    }
+
+    /**
+     * Whether {@link #filter(Context, Item)} touches the file or the media provider.
+     */
+    public boolean needsIo() {
+        return false;
+    }
+
     /**
      * Whether an {@link Item} need filtering.
      */
     protected boolean needFiltering(Context context, Item item) {
-        for (MimeType type : constraintTypes()) {
-            if (type.checkType(context.getContentResolver(), item.getContentUri())) {
-                return true;
-            }
-        }
-        return false;
+        return item.isAnyOf(MimeType.maskOf(constraintTypes()));
     }
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.filter;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+
+/**
+ * Snapshot of how a {@link Filter} performed since it was added, see
+ * {@link com.zhihu.matisse.Matisse#getFilterStats()}.
+ */
+@SuppressWarnings("unused")
+public final class FilterStats {
+
+    public final Filter filter;
+    public final long runs;
+    public final long rejections;
+    public final long totalNanos;
+    // the place the filter currently runs at, 0 for first
+    public final int rank;
+
+    public FilterStats(Filter filter, long runs, long rejections, long totalNanos, int rank) {
+        this.filter = filter;
+        this.runs = runs;
+        this.rejections = rejections;
+        this.totalNanos = totalNanos;
+        this.rank = rank;
+    }
+
+    public long getAverageNanos() {
+        return runs == 0 ? 0 : totalNanos / runs;
+    }
+
+    public float getRejectionRate() {
+        return runs == 0 ? 0 : (float) rejections / runs;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s: #%d, %d runs, %.1f%% rejected, %.3f ms average",
+                filter.getClass().getSimpleName(), rank, runs, getRejectionRate() * 100,
+                getAverageNanos() / 1e6);
+    }
+}
@@ -42,17 +42,28 @@ public class Album implements Parcelable {
     };
     public static final String ALBUM_ID_ALL = String.valueOf(-1);
     public static final String ALBUM_NAME_ALL = "All";
+    // virtual albums gathered from all buckets, bucket ids are numeric so these never collide
+    public static final String ALBUM_ID_VIDEOS = "virtual_videos";
+    public static final String ALBUM_ID_GIFS = "virtual_gifs";
+    public static final String ALBUM_ID_SCREENSHOTS = "virtual_screenshots";
+    public static final String ALBUM_ID_FAVORITES = "virtual_favorites";
 
     private final String mId;
     private final Uri mCoverUri;
     private final String mDisplayName;
     private long mCount;
+    private final String mVolumeName;
 
     public Album(String id, Uri coverUri, String albumName, long count) {
+        this(id, coverUri, albumName, count, null);
+    }
+
+    public Album(String id, Uri coverUri, String albumName, long count, @Nullable String volumeName) {
         mId = id;
         mCoverUri = coverUri;
         mDisplayName = albumName;
         mCount = count;
+        mVolumeName = volumeName;
     }
 
     private Album(Parcel source) {
@@ -60,6 +71,7 @@ public class Album implements Parcelable {
         mCoverUri = source.readParcelable(Uri.class.getClassLoader());
         mDisplayName = source.readString();
         mCount = source.readLong();
+        mVolumeName = source.readString();
     }
 
     /**
@@ -68,11 +80,13 @@ public class Album implements Parcelable {
      */
     public static Album valueOf(Cursor cursor) {
         String clumn = cursor.getString(cursor.getColumnIndex(AlbumLoader.COLUMN_URI));
+        int volumeIndex = cursor.getColumnIndex(AlbumLoader.COLUMN_VOLUME_NAME);
         return new Album(
                 cursor.getString(cursor.getColumnIndex("bucket_id")),
                 Uri.parse(clumn != null ? clumn : ""),
                 cursor.getString(cursor.getColumnIndex("bucket_display_name")),
-                cursor.getLong(cursor.getColumnIndex(AlbumLoader.COLUMN_COUNT)));
+                cursor.getLong(cursor.getColumnIndex(AlbumLoader.COLUMN_COUNT)),
+                volumeIndex == -1 ? null : cursor.getString(volumeIndex));
     }
 
     @Override
@@ -86,6 +100,7 @@ public class Album implements Parcelable {
         dest.writeParcelable(mCoverUri, flags);
         dest.writeString(mDisplayName);
         dest.writeLong(mCount);
+        dest.writeString(mVolumeName);
     }
 
     public String getId() {
@@ -100,6 +115,15 @@ public class Album implements Parcelable {
         return mCount;
     }
 
+    /**
+     * @return the external volume holding this bucket, null for "All", the virtual albums and before
+     * Android 10 (Q).
+     */
+    @Nullable
+    public String getVolumeName() {
+        return mVolumeName;
+    }
+
     public void addCaptureCount() {
         mCount++;
     }
@@ -107,6 +131,14 @@ public class Album implements Parcelable {
     public String getDisplayName(Context context) {
         if (isAll()) {
             return context.getString(R.string.album_name_all);
+        } else if (ALBUM_ID_VIDEOS.equals(mId)) {
+            return context.getString(R.string.album_name_videos);
+        } else if (ALBUM_ID_GIFS.equals(mId)) {
+            return context.getString(R.string.album_name_gifs);
+        } else if (ALBUM_ID_SCREENSHOTS.equals(mId)) {
+            return context.getString(R.string.album_name_screenshots);
+        } else if (ALBUM_ID_FAVORITES.equals(mId)) {
+            return context.getString(R.string.album_name_favorites);
         }
         return mDisplayName;
     }
@@ -115,6 +147,14 @@ public class Album implements Parcelable {
         return ALBUM_ID_ALL.equals(mId);
     }
 
+    /**
+     * @return whether this album collects media across buckets, like Videos or Favorites.
+     */
+    public boolean isVirtual() {
+        return ALBUM_ID_VIDEOS.equals(mId) || ALBUM_ID_GIFS.equals(mId)
+                || ALBUM_ID_SCREENSHOTS.equals(mId) || ALBUM_ID_FAVORITES.equals(mId);
+    }
+
     public boolean isEmpty() {
         return mCount == 0;
     }
@@ -16,6 +16,7 @@
 package com.zhihu.matisse.internal.entity;
 
 import android.content.Context;
+import android.content.ContextWrapper;
 import androidx.annotation.IntDef;
 import androidx.fragment.app.FragmentActivity;
 import android.widget.Toast;
@@ -71,7 +72,7 @@ public class IncapableCause {
                 break;
             case DIALOG:
                 IncapableDialog incapableDialog = IncapableDialog.newInstance(cause.mTitle, cause.mMessage);
-                incapableDialog.show(((FragmentActivity) context).getSupportFragmentManager(),
+                incapableDialog.show(findActivity(context).getSupportFragmentManager(),
                         IncapableDialog.class.getName());
                 break;
             case TOAST:
@@ -80,4 +81,12 @@ public class IncapableCause {
                 break;
         }
     }
+
+    // the context may be a themed wrapper when Matisse is embedded through MatisseFragment
+    private static FragmentActivity findActivity(Context context) {
+        while (!(context instanceof FragmentActivity) && context instanceof ContextWrapper) {
+            context = ((ContextWrapper) context).getBaseContext();
+        }
+        return (FragmentActivity) context;
+    }
 }
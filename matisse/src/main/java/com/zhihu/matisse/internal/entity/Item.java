@@ -41,42 +41,132 @@ public class Item implements Parcelable {
     };
     public static final long ITEM_ID_CAPTURE = -1;
     public static final String ITEM_DISPLAY_NAME_CAPTURE = "Capture";
+    // in the Files table for every API level, MediaColumns only names them from Android 10 (Q)
+    public static final String COLUMN_ORIENTATION = MediaStore.Images.ImageColumns.ORIENTATION;
+    public static final String COLUMN_BUCKET_ID = MediaStore.Images.ImageColumns.BUCKET_ID;
+    public static final int ORIENTATION_UNKNOWN = -1;
+    private static final int IMAGE_MASK = MimeType.maskOf(MimeType.ofImage());
+    private static final int VIDEO_MASK = MimeType.maskOf(MimeType.ofVideo());
     public final long id;
     public final String mimeType;
     public final Uri uri;
     public final long size;
     public final long duration; // only for video, in ms
+    // as stored, before orientation is applied, 0 if unknown
+    public final int width;
+    public final int height;
+    public final int orientation; // in degrees, ORIENTATION_UNKNOWN if not recorded
+    public final long dateTaken; // in ms, 0 if unknown
+    public final long dateModified; // in seconds
+    public final long bucketId;
+    @Nullable
+    public final String path; // the _data column, may be missing or unreadable from Android 10 (Q)
+    // bits of the MimeTypes this item is of, resolved once so type checks need no string comparison
+    private final int mTypeMask;
 
-    private Item(long id, String mimeType, long size, long duration) {
+    private Item(long id, String mimeType, long size, long duration, int width, int height, int orientation,
+                 long dateTaken, long dateModified, long bucketId, String path) {
         this.id = id;
         this.mimeType = mimeType;
-        Uri contentUri;
-        if (isImage()) {
-            contentUri = MediaStore.Images.Media.EXTERNAL_CONTENT_URI;
-        } else if (isVideo()) {
-            contentUri = MediaStore.Video.Media.EXTERNAL_CONTENT_URI;
-        } else {
-            // ?
-            contentUri = MediaStore.Files.getContentUri("external");
-        }
-        this.uri = ContentUris.withAppendedId(contentUri, id);
+        this.path = path;
+        this.mTypeMask = typeMaskOf(mimeType, path);
+        this.uri = contentUriOf(id, mTypeMask);
         this.size = size;
         this.duration = duration;
+        this.width = width;
+        this.height = height;
+        this.orientation = orientation;
+        this.dateTaken = dateTaken;
+        this.dateModified = dateModified;
+        this.bucketId = bucketId;
     }
 
     private Item(Parcel source) {
         id = source.readLong();
         mimeType = source.readString();
-        uri = source.readParcelable(Uri.class.getClassLoader());
         size = source.readLong();
         duration = source.readLong();
+        width = source.readInt();
+        height = source.readInt();
+        orientation = source.readInt();
+        dateTaken = source.readLong();
+        dateModified = source.readLong();
+        bucketId = source.readLong();
+        // not parcelled to keep the parcel compact, looked up again by PathResolver when needed
+        path = null;
+        mTypeMask = source.readInt();
+        // rebuilt from the type instead of parcelling it
+        uri = contentUriOf(id, mTypeMask);
+    }
+
+    private Item(Item source, int typeMask) {
+        id = source.id;
+        mimeType = source.mimeType;
+        uri = source.uri;
+        size = source.size;
+        duration = source.duration;
+        width = source.width;
+        height = source.height;
+        orientation = source.orientation;
+        dateTaken = source.dateTaken;
+        dateModified = source.dateModified;
+        bucketId = source.bucketId;
+        path = source.path;
+        mTypeMask = typeMask;
+    }
+
+    private static int typeMaskOf(String mimeType, String path) {
+        int mask = MimeType.maskOf(mimeType);
+        // the provider may not know the type, e.g. for files copied without a media scan
+        return mask != 0 ? mask : MimeType.maskOfPath(path);
+    }
+
+    private static Uri contentUriOf(long id, int typeMask) {
+        Uri contentUri;
+        if ((typeMask & IMAGE_MASK) != 0) {
+            contentUri = MediaStore.Images.Media.EXTERNAL_CONTENT_URI;
+        } else if ((typeMask & VIDEO_MASK) != 0) {
+            contentUri = MediaStore.Video.Media.EXTERNAL_CONTENT_URI;
+        } else {
+            // ?
+            contentUri = MediaStore.Files.getContentUri("external");
+        }
+        return ContentUris.withAppendedId(contentUri, id);
     }
 
+    /**
+     * Reads the columns of {@link com.zhihu.matisse.internal.loader.AlbumMediaLoader}, columns missing from
+     * {@code cursor} are left unknown.
+     */
     public static Item valueOf(Cursor cursor) {
+        int orientationIndex = cursor.getColumnIndex(COLUMN_ORIENTATION);
         return new Item(cursor.getLong(cursor.getColumnIndex(MediaStore.Files.FileColumns._ID)),
                 cursor.getString(cursor.getColumnIndex(MediaStore.MediaColumns.MIME_TYPE)),
                 cursor.getLong(cursor.getColumnIndex(MediaStore.MediaColumns.SIZE)),
-                cursor.getLong(cursor.getColumnIndex("duration")));
+                cursor.getLong(cursor.getColumnIndex("duration")),
+                getInt(cursor, MediaStore.MediaColumns.WIDTH),
+                getInt(cursor, MediaStore.MediaColumns.HEIGHT),
+                orientationIndex == -1 || cursor.isNull(orientationIndex)
+                        ? ORIENTATION_UNKNOWN : cursor.getInt(orientationIndex),
+                getLong(cursor, MediaStore.Images.ImageColumns.DATE_TAKEN),
+                getLong(cursor, MediaStore.MediaColumns.DATE_MODIFIED),
+                getLong(cursor, COLUMN_BUCKET_ID),
+                getString(cursor, MediaStore.MediaColumns.DATA));
+    }
+
+    private static int getInt(Cursor cursor, String column) {
+        int index = cursor.getColumnIndex(column);
+        return index == -1 ? 0 : cursor.getInt(index);
+    }
+
+    private static long getLong(Cursor cursor, String column) {
+        int index = cursor.getColumnIndex(column);
+        return index == -1 ? 0 : cursor.getLong(index);
+    }
+
+    private static String getString(Cursor cursor, String column) {
+        int index = cursor.getColumnIndex(column);
+        return index == -1 ? null : cursor.getString(index);
     }
 
     @Override
@@ -88,9 +178,15 @@ public class Item implements Parcelable {
     public void writeToParcel(Parcel dest, int flags) {
         dest.writeLong(id);
         dest.writeString(mimeType);
-        dest.writeParcelable(uri, 0);
         dest.writeLong(size);
         dest.writeLong(duration);
+        dest.writeInt(width);
+        dest.writeInt(height);
+        dest.writeInt(orientation);
+        dest.writeLong(dateTaken);
+        dest.writeLong(dateModified);
+        dest.writeLong(bucketId);
+        dest.writeInt(mTypeMask);
     }
 
     public Uri getContentUri() {
@@ -102,31 +198,34 @@ public class Item implements Parcelable {
     }
 
     public boolean isImage() {
-        if (mimeType == null) return false;
-        return mimeType.equals(MimeType.JPEG.toString())
-                || mimeType.equals(MimeType.PNG.toString())
-                || mimeType.equals(MimeType.GIF.toString())
-                || mimeType.equals(MimeType.BMP.toString())
-                || mimeType.equals(MimeType.WEBP.toString())
-                || mimeType.equals(MimeType.HEIC.toString());
+        return (mTypeMask & IMAGE_MASK) != 0;
     }
 
     public boolean isGif() {
-        if (mimeType == null) return false;
-        return mimeType.equals(MimeType.GIF.toString());
+        return (mTypeMask & MimeType.GIF.mask()) != 0;
     }
 
     public boolean isVideo() {
-        if (mimeType == null) return false;
-        return mimeType.equals(MimeType.MPEG.toString())
-                || mimeType.equals(MimeType.MP4.toString())
-                || mimeType.equals(MimeType.QUICKTIME.toString())
-                || mimeType.equals(MimeType.THREEGPP.toString())
-                || mimeType.equals(MimeType.THREEGPP2.toString())
-                || mimeType.equals(MimeType.MKV.toString())
-                || mimeType.equals(MimeType.WEBM.toString())
-                || mimeType.equals(MimeType.TS.toString())
-                || mimeType.equals(MimeType.AVI.toString());
+        return (mTypeMask & VIDEO_MASK) != 0;
+    }
+
+    /**
+     * @param mimeTypeMask see {@link MimeType#maskOf(java.util.Set)}.
+     * @return whether this item is of any of the types in {@code mimeTypeMask}.
+     */
+    public boolean isAnyOf(int mimeTypeMask) {
+        return (mTypeMask & mimeTypeMask) != 0;
+    }
+
+    public int getTypeMask() {
+        return mTypeMask;
+    }
+
+    /**
+     * @return this item with the types found in the file, e.g. a GIF named .jpg, same content Uri.
+     */
+    public Item withTypeMask(int typeMask) {
+        return typeMask == mTypeMask ? this : new Item(this, typeMask);
     }
 
     @Override
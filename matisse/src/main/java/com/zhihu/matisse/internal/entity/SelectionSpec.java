@@ -22,19 +22,24 @@ import androidx.annotation.StyleRes;
 
 import com.zhihu.matisse.MimeType;
 import com.zhihu.matisse.R;
+import com.zhihu.matisse.SortOrder;
 import com.zhihu.matisse.engine.ImageEngine;
 import com.zhihu.matisse.engine.impl.GlideEngine;
 import com.zhihu.matisse.filter.Filter;
 import com.zhihu.matisse.listener.OnCheckedListener;
 import com.zhihu.matisse.listener.OnSelectedListener;
+import com.zhihu.matisse.listener.OnSelectionChangedListener;
 import com.zhihu.matisse.listener.SelectionDelegate;
+import com.zhihu.matisse.processor.Processor;
 
+import java.io.File;
 import java.util.List;
 import java.util.Set;
 
 public final class SelectionSpec {
 
     public Set<MimeType> mimeTypeSet;
+    public int mimeTypeMask; // mimeTypeSet as bits, see MimeType#maskOf(Set)
     public boolean mediaTypeExclusive;
     public boolean showSingleMediaType;
     @StyleRes
@@ -53,9 +58,16 @@ public final class SelectionSpec {
     public ImageEngine imageEngine;
     public boolean hasInited;
     public OnSelectedListener onSelectedListener;
+    public OnSelectionChangedListener onSelectionChangedListener;
     public boolean originalable;
     public boolean autoHideToobar;
-    public int originalMaxSize;
+    public int originalMaxSize; // in MB
+    public int optimizeLongEdge; // in pixels
+    public int optimizeQuality;
+    public boolean stripMetadata;
+    public boolean computeDigests;
+    public File importDirectory;
+    public int importThreads;
     public OnCheckedListener onCheckedListener;
     public boolean enablePreview;
     public boolean allowsMultipleSelection;
@@ -68,6 +80,13 @@ public final class SelectionSpec {
     public String alertNBtn;
     public String alertPBtn;
     public boolean showPreview;
+    public boolean showDateSections;
+    // current order, follows the user when the sort menu is shown
+    public SortOrder sortOrder;
+    public boolean showSortMenu;
+    public Processor processor;
+    public int processingThreads;
+    public long processingDiskBudget; // in bytes
 
     public SelectionDelegate getDelegate() {
         return delegate;
@@ -94,6 +113,7 @@ public final class SelectionSpec {
 
     private void reset() {
         mimeTypeSet = null;
+        mimeTypeMask = 0;
         mediaTypeExclusive = true;
         showSingleMediaType = false;
         themeId = R.style.Matisse_Zhihu;
@@ -110,9 +130,18 @@ public final class SelectionSpec {
         thumbnailScale = 0.5f;
         imageEngine = new GlideEngine();
         hasInited = true;
+        onSelectedListener = null;
+        onSelectionChangedListener = null;
         originalable = false;
+        showUseOrigin = false;
         autoHideToobar = false;
         originalMaxSize = Integer.MAX_VALUE;
+        optimizeLongEdge = 2048;
+        optimizeQuality = 85;
+        stripMetadata = false;
+        computeDigests = false;
+        importDirectory = null;
+        importThreads = 2;
         enablePreview = false;
         allowsMultipleSelection = true;
         maxVideoLength = 15;
@@ -123,6 +152,12 @@ public final class SelectionSpec {
         alertNBtn = "Dont Show";
         alertPBtn = "OK";
         showPreview = true;
+        showDateSections = false;
+        sortOrder = SortOrder.DATE_TAKEN_DESC;
+        showSortMenu = false;
+        processor = null;
+        processingThreads = 2;
+        processingDiskBudget = 64L * 1024 * 1024;
     }
 
     public boolean singleSelectionModeEnabled() {
@@ -133,6 +168,10 @@ public final class SelectionSpec {
         return orientation != ActivityInfo.SCREEN_ORIENTATION_UNSPECIFIED;
     }
 
+    public boolean showOriginal() {
+        return originalable || showUseOrigin;
+    }
+
     public boolean onlyShowImages() {
         return showSingleMediaType && MimeType.ofImage().containsAll(mimeTypeSet);
     }
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.entity;
+
+/**
+ * What is known of a video without playing it.
+ */
+public class VideoInfo {
+
+    public final long duration; // in ms, 0 if unknown
+    public final int width;
+    public final int height;
+    public final int rotation; // in degrees
+    // whether the platform can read the video stream of the file
+    public final boolean decodable;
+
+    public VideoInfo(long duration, int width, int height, int rotation, boolean decodable) {
+        this.duration = duration;
+        this.width = width;
+        this.height = height;
+        this.rotation = rotation;
+        this.decodable = decodable;
+    }
+
+    /**
+     * @return what the media provider recorded for {@code item}, null if it has no duration for it.
+     */
+    public static VideoInfo fromMediaStore(Item item) {
+        if (item.duration <= 0) {
+            return null;
+        }
+        return new VideoInfo(item.duration, item.width, item.height,
+                item.orientation == Item.ORIENTATION_UNKNOWN ? 0 : item.orientation, true);
+    }
+}
@@ -16,35 +16,42 @@
  */
 package com.zhihu.matisse.internal.loader;
 
+import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.database.MergeCursor;
 import android.net.Uri;
-import android.os.Build;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
 import android.provider.MediaStore;
 
+import androidx.core.os.OperationCanceledException;
 import androidx.loader.content.CursorLoader;
 
 import com.zhihu.matisse.MimeType;
+import com.zhihu.matisse.SortOrder;
 import com.zhihu.matisse.internal.entity.Album;
 import com.zhihu.matisse.internal.entity.SelectionSpec;
 
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Load all albums (grouped by bucket_id) into a single cursor.
+ * Load all albums (grouped by bucket_id) into a single cursor. While the media table is scanned, partial album
+ * lists are delivered every {@link #PUBLISH_INTERVAL} rows, starting with the first one.
  */
 public class AlbumLoader extends CursorLoader {
 
-    private static final String COLUMN_BUCKET_ID = "bucket_id";
+    public static final String COLUMN_BUCKET_ID = "bucket_id";
     private static final String COLUMN_BUCKET_DISPLAY_NAME = "bucket_display_name";
     public static final String COLUMN_URI = "uri";
     public static final String COLUMN_COUNT = "count";
+    public static final String COLUMN_VOLUME_NAME = VolumeQuery.COLUMN_VOLUME_NAME;
     private static final Uri QUERY_URI = MediaStore.Files.getContentUri("external");
 
     private static final String[] COLUMNS = {
@@ -53,20 +60,43 @@ public class AlbumLoader extends CursorLoader {
             COLUMN_BUCKET_DISPLAY_NAME,
             MediaStore.MediaColumns.MIME_TYPE,
             COLUMN_URI,
-            COLUMN_COUNT};
+            COLUMN_COUNT,
+            COLUMN_VOLUME_NAME};
+
+    // counts and covers of the virtual albums ride along with the GROUP BY (bucket_id) query, see coverKey()
+    private static final String COLUMN_VIDEO_COUNT = "video_count";
+    private static final String COLUMN_GIF_COUNT = "gif_count";
+    private static final String COLUMN_COVER_KEY = "cover_key";
+    private static final String COLUMN_VIDEO_COVER_KEY = "video_cover_key";
+    private static final String COLUMN_GIF_COVER_KEY = "gif_cover_key";
+    // separates the parts of a cover key, below any character of a name
+    private static final char KEY_SEPARATOR = '\u0001';
+    private static final String SQL_KEY_SEPARATOR = "CAST(X'01' AS TEXT)";
+    // wide enough for any millisecond date or size
+    private static final String SQL_PADDING = "'00000000000000000000'";
+    private static final int PADDED_LENGTH = 20;
+    // available from Android 11 (R)
+    static final String COLUMN_IS_FAVORITE = "is_favorite";
+    static final String SCREENSHOTS_BUCKET = "Screenshots";
+
+    private static final String IS_VIDEO = MediaStore.Files.FileColumns.MEDIA_TYPE + "="
+            + MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO;
+    private static final String IS_GIF = MediaStore.MediaColumns.MIME_TYPE + "='" + MimeType.GIF + "'";
 
-    private static final String[] PROJECTION = {
+    private static final String[] PROJECTION_29 = {
             MediaStore.Files.FileColumns._ID,
             COLUMN_BUCKET_ID,
             COLUMN_BUCKET_DISPLAY_NAME,
             MediaStore.MediaColumns.MIME_TYPE,
-            "COUNT(*) AS " + COLUMN_COUNT};
+            COLUMN_VOLUME_NAME};
 
-    private static final String[] PROJECTION_29 = {
+    private static final String[] PROJECTION_30 = {
             MediaStore.Files.FileColumns._ID,
             COLUMN_BUCKET_ID,
             COLUMN_BUCKET_DISPLAY_NAME,
-            MediaStore.MediaColumns.MIME_TYPE};
+            MediaStore.MediaColumns.MIME_TYPE,
+            COLUMN_VOLUME_NAME,
+            COLUMN_IS_FAVORITE};
 
     // === params for showSingleMediaType: false ===
     private static final String SELECTION =
@@ -116,147 +146,261 @@ public class AlbumLoader extends CursorLoader {
     }
     // =============================================
 
-    private static final String BUCKET_ORDER_BY = "datetaken DESC";
+    // media rows scanned between two partial deliveries of the album list
+    private static final int PUBLISH_INTERVAL = 2000;
+
+    private final SortOrder mOrder;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    // bumped by every load and cancel, partial results of an older load are dropped
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
+    // set while the volumes are queried, guarded by this
+    private CancellationSignal mVolumeCancellation;
 
-    private AlbumLoader(Context context, String selection, String[] selectionArgs) {
+    private AlbumLoader(Context context, String groupedSelection, String mediaSelection, String[] selectionArgs,
+                        SortOrder order) {
         super(
                 context,
                 QUERY_URI,
-                beforeAndroidTen() ? PROJECTION : PROJECTION_29,
-                selection,
+                beforeAndroidTen() ? groupedProjection(order)
+                        : (beforeAndroidEleven() ? PROJECTION_29 : PROJECTION_30),
+                beforeAndroidTen() ? groupedSelection : mediaSelection,
                 selectionArgs,
-                BUCKET_ORDER_BY
+                order.getOrderBy()
         );
+        mOrder = order;
+    }
+
+    /**
+     * @return the columns of the GROUP BY (bucket_id) query before Android 10, one row per bucket with its counts
+     * and the cover keys of the bucket and of the virtual albums in it.
+     */
+    private static String[] groupedProjection(SortOrder order) {
+        String key = coverKey(order);
+        String aggregate = order.isAscending() ? "MIN(" : "MAX(";
+        return new String[]{
+                MediaStore.Files.FileColumns._ID,
+                COLUMN_BUCKET_ID,
+                COLUMN_BUCKET_DISPLAY_NAME,
+                MediaStore.MediaColumns.MIME_TYPE,
+                "COUNT(*) AS " + COLUMN_COUNT,
+                "SUM(" + IS_VIDEO + ") AS " + COLUMN_VIDEO_COUNT,
+                "SUM(" + IS_GIF + ") AS " + COLUMN_GIF_COUNT,
+                aggregate + key + ") AS " + COLUMN_COVER_KEY,
+                aggregate + "CASE WHEN " + IS_VIDEO + " THEN " + key + " END) AS " + COLUMN_VIDEO_COVER_KEY,
+                aggregate + "CASE WHEN " + IS_GIF + " THEN " + key + " END) AS " + COLUMN_GIF_COVER_KEY};
+    }
+
+    /**
+     * The row a GROUP BY keeps is not the first in sort order. A cover key is a string which sorts the media of
+     * a bucket the way {@code order} does, the row id breaking ties, and ends with the id and the MIME type, so
+     * that a MIN or MAX of it picks the cover within the one grouped scan. Numbers are zero padded to sort as
+     * strings, nulls sort first as they do in SQLite.
+     */
+    private static String coverKey(SortOrder order) {
+        String column = order.getColumn();
+        String sortKey = MediaStore.MediaColumns.DISPLAY_NAME.equals(column)
+                ? "IFNULL(" + column + ",'')" : padded(column);
+        return sortKey + "||" + SQL_KEY_SEPARATOR + "||" + padded(MediaStore.Files.FileColumns._ID)
+                + "||" + SQL_KEY_SEPARATOR + "||IFNULL(" + MediaStore.MediaColumns.MIME_TYPE + ",'')";
+    }
+
+    private static String padded(String column) {
+        return "SUBSTR(" + SQL_PADDING + "||IFNULL(" + column + ",0),-" + PADDED_LENGTH + ")";
     }
 
     public static CursorLoader newInstance(Context context) {
-        String selection;
+        String groupedSelection;
+        String mediaSelection;
         String[] selectionArgs;
         if (SelectionSpec.getInstance().onlyShowGif()) {
-            selection = beforeAndroidTen()
-                    ? SELECTION_FOR_SINGLE_MEDIA_GIF_TYPE : SELECTION_FOR_SINGLE_MEDIA_GIF_TYPE_29;
+            groupedSelection = SELECTION_FOR_SINGLE_MEDIA_GIF_TYPE;
+            mediaSelection = SELECTION_FOR_SINGLE_MEDIA_GIF_TYPE_29;
             selectionArgs = getSelectionArgsForSingleMediaGifType(
                     MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE);
         } else if (SelectionSpec.getInstance().onlyShowImages()) {
-            selection = beforeAndroidTen()
-                    ? SELECTION_FOR_SINGLE_MEDIA_TYPE : SELECTION_FOR_SINGLE_MEDIA_TYPE_29;
+            groupedSelection = SELECTION_FOR_SINGLE_MEDIA_TYPE;
+            mediaSelection = SELECTION_FOR_SINGLE_MEDIA_TYPE_29;
             selectionArgs = getSelectionArgsForSingleMediaType(
                     MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE);
         } else if (SelectionSpec.getInstance().onlyShowVideos()) {
-            selection = beforeAndroidTen()
-                    ? SELECTION_FOR_SINGLE_MEDIA_TYPE : SELECTION_FOR_SINGLE_MEDIA_TYPE_29;
+            groupedSelection = SELECTION_FOR_SINGLE_MEDIA_TYPE;
+            mediaSelection = SELECTION_FOR_SINGLE_MEDIA_TYPE_29;
             selectionArgs = getSelectionArgsForSingleMediaType(
                     MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO);
         } else {
-            selection = beforeAndroidTen() ? SELECTION : SELECTION_29;
+            groupedSelection = SELECTION;
+            mediaSelection = SELECTION_29;
             selectionArgs = SELECTION_ARGS;
         }
-        return new AlbumLoader(context, selection, selectionArgs);
+        // the first row of a bucket in this order is its cover
+        return new AlbumLoader(context, groupedSelection, mediaSelection, selectionArgs,
+                SelectionSpec.getInstance().sortOrder);
+    }
+
+    /**
+     * @return what the albums loaded for the current selection depend on, lists of the same key can stand in
+     * for each other.
+     */
+    public static String queryKey() {
+        SelectionSpec spec = SelectionSpec.getInstance();
+        return spec.onlyShowGif() + "," + spec.onlyShowImages() + "," + spec.onlyShowVideos() + ","
+                + spec.sortOrder;
     }
 
     @Override
     public Cursor loadInBackground() {
-        Cursor albums = super.loadInBackground();
-        MatrixCursor allAlbum = new MatrixCursor(COLUMNS);
-
-        if (beforeAndroidTen()) {
-            int totalCount = 0;
-            Uri allAlbumCoverUri = null;
-            MatrixCursor otherAlbums = new MatrixCursor(COLUMNS);
-            if (albums != null) {
+        int generation = mGeneration.incrementAndGet();
+        // the pseudo GROUP BY below needs the merged rows in sort order for the covers to be right
+        Cursor albums = VolumeQuery.hasMultipleVolumes(getContext())
+                ? queryVolumes()
+                : super.loadInBackground();
+        AlbumList list = new AlbumList();
+        if (albums == null) {
+            return observed(list.toCursor(false));
+        }
+        try {
+            int idIndex = albums.getColumnIndex(MediaStore.Files.FileColumns._ID);
+            int bucketIdIndex = albums.getColumnIndex(COLUMN_BUCKET_ID);
+            int displayNameIndex = albums.getColumnIndex(COLUMN_BUCKET_DISPLAY_NAME);
+            int mimeTypeIndex = albums.getColumnIndex(MediaStore.MediaColumns.MIME_TYPE);
+            if (beforeAndroidTen()) {
+                int countIndex = albums.getColumnIndex(COLUMN_COUNT);
+                int videoCountIndex = albums.getColumnIndex(COLUMN_VIDEO_COUNT);
+                int gifCountIndex = albums.getColumnIndex(COLUMN_GIF_COUNT);
+                int coverKeyIndex = albums.getColumnIndex(COLUMN_COVER_KEY);
+                int videoCoverKeyIndex = albums.getColumnIndex(COLUMN_VIDEO_COVER_KEY);
+                int gifCoverKeyIndex = albums.getColumnIndex(COLUMN_GIF_COVER_KEY);
+                boolean ascending = mOrder.isAscending();
+                Tally all = new Tally(Album.ALBUM_ID_ALL);
+                // one row per bucket, already counted by the provider
                 while (albums.moveToNext()) {
-                    long fileId = albums.getLong(
-                            albums.getColumnIndex(MediaStore.Files.FileColumns._ID));
-                    long bucketId = albums.getLong(
-                            albums.getColumnIndex(COLUMN_BUCKET_ID));
-                    String bucketDisplayName = albums.getString(
-                            albums.getColumnIndex(COLUMN_BUCKET_DISPLAY_NAME));
-                    String mimeType = albums.getString(
-                            albums.getColumnIndex(MediaStore.MediaColumns.MIME_TYPE));
-                    Uri uri = getUri(albums);
-                    int count = albums.getInt(albums.getColumnIndex(COLUMN_COUNT));
-
-                    otherAlbums.addRow(new String[]{
-                            Long.toString(fileId),
-                            Long.toString(bucketId), bucketDisplayName, mimeType, uri.toString(),
-                            String.valueOf(count)});
-                    totalCount += count;
+                    String bucketDisplayName = albums.getString(displayNameIndex);
+                    String coverKey = albums.getString(coverKeyIndex);
+                    Tally bucket = new Tally(null);
+                    bucket.offerCover(coverKey, ascending);
+                    all.offerCover(coverKey, ascending);
+                    int count = albums.getInt(countIndex);
+                    if (bucket.mCoverUri != null) {
+                        list.addBucket(bucket.mCoverId, albums.getLong(bucketIdIndex), bucketDisplayName,
+                                bucket.mCoverMimeType, bucket.mCoverUri, count, null);
+                    } else {
+                        list.addBucket(albums.getLong(idIndex), albums.getLong(bucketIdIndex), bucketDisplayName,
+                                albums.getString(mimeTypeIndex), getUri(albums), count, null);
+                    }
+                    list.mVideos.add(albums.getLong(videoCountIndex));
+                    list.mVideos.offerCover(albums.getString(videoCoverKeyIndex), ascending);
+                    list.mGifs.add(albums.getLong(gifCountIndex));
+                    list.mGifs.offerCover(albums.getString(gifCoverKeyIndex), ascending);
+                    if (SCREENSHOTS_BUCKET.equalsIgnoreCase(bucketDisplayName)) {
+                        list.mScreenshots.add(count);
+                        list.mScreenshots.offerCover(coverKey, ascending);
+                    }
                 }
-                if (albums.moveToFirst()) {
-                    allAlbumCoverUri = getUri(albums);
+                if (all.mCoverUri != null) {
+                    list.mCoverUri = all.mCoverUri;
                 }
-            }
-
-            allAlbum.addRow(new String[]{
-                    Album.ALBUM_ID_ALL, Album.ALBUM_ID_ALL, Album.ALBUM_NAME_ALL, null,
-                    allAlbumCoverUri == null ? null : allAlbumCoverUri.toString(),
-                    String.valueOf(totalCount)});
-
-            return new MergeCursor(new Cursor[]{allAlbum, otherAlbums});
-        } else {
-            int totalCount = 0;
-            Uri allAlbumCoverUri = null;
-
-            // Pseudo GROUP BY
-            Map<Long, Long> countMap = new HashMap<>();
-            if (albums != null) {
+            } else {
+                // Pseudo GROUP BY, one row per media. The first row of a bucket is its cover.
+                int favoriteIndex = albums.getColumnIndex(COLUMN_IS_FAVORITE);
+                int volumeIndex = albums.getColumnIndex(COLUMN_VOLUME_NAME);
                 while (albums.moveToNext()) {
-                    long bucketId = albums.getLong(albums.getColumnIndex(COLUMN_BUCKET_ID));
+                    long bucketId = albums.getLong(bucketIdIndex);
+                    String mimeType = albums.getString(mimeTypeIndex);
+                    String bucketDisplayName = albums.getString(displayNameIndex);
+                    if (!list.addToBucket(bucketId)) {
+                        list.addBucket(albums.getLong(idIndex), bucketId, bucketDisplayName, mimeType,
+                                getUri(albums), 1, volumeIndex == -1 ? null : albums.getString(volumeIndex));
+                    }
 
-                    Long count = countMap.get(bucketId);
-                    if (count == null) {
-                        count = 1L;
-                    } else {
-                        count++;
+                    if (MimeType.isVideo(mimeType)) {
+                        list.mVideos.add(albums);
+                    } else if (MimeType.GIF.toString().equals(mimeType)) {
+                        list.mGifs.add(albums);
+                    }
+                    if (SCREENSHOTS_BUCKET.equalsIgnoreCase(bucketDisplayName)) {
+                        list.mScreenshots.add(albums);
+                    }
+                    if (favoriteIndex != -1 && albums.getInt(favoriteIndex) == 1) {
+                        list.mFavorites.add(albums);
+                    }
+
+                    int scanned = albums.getPosition() + 1;
+                    if (scanned == 1 || scanned % PUBLISH_INTERVAL == 0) {
+                        if (isLoadInBackgroundCanceled()) {
+                            throw new OperationCanceledException();
+                        }
+                        publish(list.toCursor(true), generation);
                     }
-                    countMap.put(bucketId, count);
                 }
             }
+        } finally {
+            albums.close();
+        }
+        return observed(list.toCursor(false));
+    }
 
-            MatrixCursor otherAlbums = new MatrixCursor(COLUMNS);
-            if (albums != null) {
-                if (albums.moveToFirst()) {
-                    allAlbumCoverUri = getUri(albums);
-
-                    Set<Long> done = new HashSet<>();
-
-                    do {
-                        long bucketId = albums.getLong(albums.getColumnIndex(COLUMN_BUCKET_ID));
+    /**
+     * Has {@code albums} watch the media provider in place of the scanned cursor, which is closed by now.
+     */
+    private Cursor observed(Cursor albums) {
+        albums.setNotificationUri(getContext().getContentResolver(), QUERY_URI);
+        albums.registerContentObserver(mObserver);
+        return albums;
+    }
 
-                        if (done.contains(bucketId)) {
-                            continue;
-                        }
+    /**
+     * @return whether {@code albums} was delivered while the scan was still running. Later lists may insert
+     * albums before the ones in it, e.g. a virtual album once it no longer holds everything.
+     */
+    public static boolean isPartial(Cursor albums) {
+        return albums instanceof PartialAlbums;
+    }
 
-                        long fileId = albums.getLong(
-                                albums.getColumnIndex(MediaStore.Files.FileColumns._ID));
-                        String bucketDisplayName = albums.getString(
-                                albums.getColumnIndex(COLUMN_BUCKET_DISPLAY_NAME));
-                        String mimeType = albums.getString(
-                                albums.getColumnIndex(MediaStore.MediaColumns.MIME_TYPE));
-                        Uri uri = getUri(albums);
-                        long count = countMap.get(bucketId);
-
-                        otherAlbums.addRow(new String[]{
-                                Long.toString(fileId),
-                                Long.toString(bucketId),
-                                bucketDisplayName,
-                                mimeType,
-                                uri.toString(),
-                                String.valueOf(count)});
-                        done.add(bucketId);
-
-                        totalCount += count;
-                    } while (albums.moveToNext());
+    /**
+     * Delivers a partial album list on the main thread, unless the load it belongs to was cancelled meanwhile.
+     */
+    private void publish(final Cursor partial, final int generation) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (generation == mGeneration.get()) {
+                    deliverResult(partial);
+                } else {
+                    partial.close();
                 }
             }
+        });
+    }
 
-            allAlbum.addRow(new String[]{
-                    Album.ALBUM_ID_ALL,
-                    Album.ALBUM_ID_ALL, Album.ALBUM_NAME_ALL, null,
-                    allAlbumCoverUri == null ? null : allAlbumCoverUri.toString(),
-                    String.valueOf(totalCount)});
+    @Override
+    public void cancelLoadInBackground() {
+        mGeneration.incrementAndGet();
+        super.cancelLoadInBackground();
+        synchronized (this) {
+            if (mVolumeCancellation != null) {
+                mVolumeCancellation.cancel();
+            }
+        }
+    }
 
-            return new MergeCursor(new Cursor[]{allAlbum, otherAlbums});
+    /**
+     * Runs {@link VolumeQuery#query} with a signal {@link #cancelLoadInBackground()} can cancel.
+     */
+    private Cursor queryVolumes() {
+        CancellationSignal signal;
+        synchronized (this) {
+            if (isLoadInBackgroundCanceled()) {
+                throw new OperationCanceledException();
+            }
+            signal = mVolumeCancellation = new CancellationSignal();
+        }
+        try {
+            return VolumeQuery.query(getContext(), getProjection(), getSelection(), getSelectionArgs(), mOrder, signal);
+        } finally {
+            synchronized (this) {
+                mVolumeCancellation = null;
+            }
         }
     }
 
@@ -264,6 +408,10 @@ public class AlbumLoader extends CursorLoader {
         long id = cursor.getLong(cursor.getColumnIndex(MediaStore.Files.FileColumns._ID));
         String mimeType = cursor.getString(
                 cursor.getColumnIndex(MediaStore.MediaColumns.MIME_TYPE));
+        return getUri(id, mimeType);
+    }
+
+    private static Uri getUri(long id, String mimeType) {
         Uri contentUri;
 
         if (MimeType.isImage(mimeType)) {
@@ -290,4 +438,178 @@ public class AlbumLoader extends CursorLoader {
     private static boolean beforeAndroidTen() {
         return android.os.Build.VERSION.SDK_INT < 29;
     }
+
+    /**
+     * @return 是否是 Android 11 （R） 之前的版本
+     */
+    private static boolean beforeAndroidEleven() {
+        return android.os.Build.VERSION.SDK_INT < 30;
+    }
+
+    /**
+     * Albums found so far, "All" and the virtual albums included, which can be turned into a cursor at any point
+     * of the scan.
+     */
+    private static final class AlbumList {
+        private static final int INDEX_COUNT = 5;
+
+        final Tally mVideos = new Tally(Album.ALBUM_ID_VIDEOS);
+        final Tally mGifs = new Tally(Album.ALBUM_ID_GIFS);
+        final Tally mScreenshots = new Tally(Album.ALBUM_ID_SCREENSHOTS);
+        final Tally mFavorites = new Tally(Album.ALBUM_ID_FAVORITES);
+        // rows in the order buckets were met, their counts are filled in by toCursor()
+        private final Map<Long, String[]> mBuckets = new LinkedHashMap<>();
+        private final Map<Long, long[]> mCounts = new HashMap<>();
+        private long mTotalCount;
+        private Uri mCoverUri;
+
+        void addBucket(long fileId, long bucketId, String displayName, String mimeType, Uri uri, long count,
+                       String volumeName) {
+            if (mCoverUri == null) {
+                mCoverUri = uri;
+            }
+            mBuckets.put(bucketId, new String[]{
+                    Long.toString(fileId),
+                    Long.toString(bucketId),
+                    displayName,
+                    mimeType,
+                    uri.toString(),
+                    null,
+                    volumeName});
+            mCounts.put(bucketId, new long[]{count});
+            mTotalCount += count;
+        }
+
+        /**
+         * @return false if the bucket is not known yet.
+         */
+        boolean addToBucket(long bucketId) {
+            long[] count = mCounts.get(bucketId);
+            if (count == null) {
+                return false;
+            }
+            count[0]++;
+            mTotalCount++;
+            return true;
+        }
+
+        Cursor toCursor(boolean partial) {
+            MatrixCursor allAlbum = new MatrixCursor(COLUMNS, 1);
+            allAlbum.addRow(new String[]{
+                    Album.ALBUM_ID_ALL,
+                    Album.ALBUM_ID_ALL, Album.ALBUM_NAME_ALL, null,
+                    mCoverUri == null ? null : mCoverUri.toString(),
+                    String.valueOf(mTotalCount), null});
+
+            MatrixCursor virtualAlbums = new MatrixCursor(COLUMNS);
+            mVideos.addRowTo(virtualAlbums, mTotalCount);
+            mGifs.addRowTo(virtualAlbums, mTotalCount);
+            mScreenshots.addRowTo(virtualAlbums, mTotalCount);
+            mFavorites.addRowTo(virtualAlbums, mTotalCount);
+
+            MatrixCursor otherAlbums = new MatrixCursor(COLUMNS, mBuckets.size());
+            for (Map.Entry<Long, String[]> bucket : mBuckets.entrySet()) {
+                // addRow copies the values, the row can be reused by the next snapshot
+                String[] row = bucket.getValue();
+                row[INDEX_COUNT] = String.valueOf(mCounts.get(bucket.getKey())[0]);
+                otherAlbums.addRow(row);
+            }
+            Cursor[] cursors = {allAlbum, virtualAlbums, otherAlbums};
+            return partial ? new PartialAlbums(cursors) : new ObservableMergeCursor(cursors);
+        }
+    }
+
+    private static final class PartialAlbums extends MergeCursor {
+
+        PartialAlbums(Cursor[] cursors) {
+            super(cursors);
+        }
+    }
+
+    /**
+     * A MergeCursor hands observers to its parts, the notification uri has to reach them as well.
+     */
+    private static final class ObservableMergeCursor extends MergeCursor {
+        private final Cursor[] mCursors;
+
+        ObservableMergeCursor(Cursor[] cursors) {
+            super(cursors);
+            mCursors = cursors;
+        }
+
+        @Override
+        public void setNotificationUri(ContentResolver cr, Uri notifyUri) {
+            for (Cursor cursor : mCursors) {
+                cursor.setNotificationUri(cr, notifyUri);
+            }
+        }
+    }
+
+    /**
+     * Count and cover of a virtual album, the cover is the first media met in sort order.
+     */
+    private static final class Tally {
+        private final String mAlbumId;
+        private long mCount;
+        private long mCoverId;
+        private String mCoverMimeType;
+        private Uri mCoverUri;
+        // the cover key of mCoverId before Android 10, see coverKey()
+        private String mCoverKey;
+
+        Tally(String albumId) {
+            mAlbumId = albumId;
+        }
+
+        void add(Cursor media) {
+            if (mCoverUri == null) {
+                setCover(media);
+            }
+            mCount++;
+        }
+
+        void add(long count) {
+            mCount += Math.max(count, 0);
+        }
+
+        void setCover(Cursor media) {
+            mCoverId = media.getLong(media.getColumnIndex(MediaStore.Files.FileColumns._ID));
+            mCoverUri = getUri(media);
+        }
+
+        /**
+         * Takes the media of {@code coverKey} as the cover if it comes before the cover so far in sort order.
+         */
+        void offerCover(String coverKey, boolean ascending) {
+            if (coverKey == null || mCoverKey != null
+                    && SortedMergeCursor.compareCodePoints(coverKey, mCoverKey) < 0 != ascending) {
+                return;
+            }
+            int mimeTypeStart = coverKey.lastIndexOf(KEY_SEPARATOR);
+            int idStart = coverKey.lastIndexOf(KEY_SEPARATOR, mimeTypeStart - 1);
+            if (idStart == -1) {
+                return;
+            }
+            try {
+                mCoverId = Long.parseLong(coverKey.substring(idStart + 1, mimeTypeStart));
+            } catch (NumberFormatException e) {
+                return;
+            }
+            mCoverMimeType = coverKey.substring(mimeTypeStart + 1);
+            mCoverUri = getUri(mCoverId, mCoverMimeType);
+            mCoverKey = coverKey;
+        }
+
+        /**
+         * Adds the album unless it is empty or holds exactly what "All" holds.
+         */
+        void addRowTo(MatrixCursor cursor, long totalCount) {
+            if (mCount == 0 || mCount == totalCount || mCoverUri == null) {
+                return;
+            }
+            cursor.addRow(new String[]{
+                    Long.toString(mCoverId), mAlbumId, null, null, mCoverUri.toString(),
+                    String.valueOf(mCount), null});
+        }
+    }
 }
\ No newline at end of file
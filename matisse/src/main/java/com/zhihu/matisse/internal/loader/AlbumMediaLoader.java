@@ -22,10 +22,14 @@ import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.database.MergeCursor;
 import android.net.Uri;
+import android.os.CancellationSignal;
 import android.provider.MediaStore;
 
+import androidx.core.os.OperationCanceledException;
 import androidx.loader.content.CursorLoader;
 
+import com.zhihu.matisse.MimeType;
+import com.zhihu.matisse.SortOrder;
 import com.zhihu.matisse.internal.entity.Album;
 import com.zhihu.matisse.internal.entity.Item;
 import com.zhihu.matisse.internal.entity.SelectionSpec;
@@ -39,12 +43,21 @@ import java.util.List;
  */
 public class AlbumMediaLoader extends CursorLoader {
     private static final Uri QUERY_URI = MediaStore.Files.getContentUri("external");
+    // everything Item carries, so nothing has to be queried again per item. All columns are in the Files table
+    // since Android 4.1, _data may hold an unreadable path from Android 10 (Q).
     private static final String[] PROJECTION = {
             MediaStore.Files.FileColumns._ID,
             MediaStore.MediaColumns.DISPLAY_NAME,
             MediaStore.MediaColumns.MIME_TYPE,
             MediaStore.MediaColumns.SIZE,
-            "duration"};
+            "duration",
+            MediaStore.Images.Media.DATE_TAKEN,
+            MediaStore.MediaColumns.WIDTH,
+            MediaStore.MediaColumns.HEIGHT,
+            Item.COLUMN_ORIENTATION,
+            MediaStore.MediaColumns.DATE_MODIFIED,
+            Item.COLUMN_BUCKET_ID,
+            MediaStore.MediaColumns.DATA};
 
     // === params for album ALL && showSingleMediaType: false ===
     private static final String SELECTION_ALL =
@@ -126,18 +139,34 @@ public class AlbumMediaLoader extends CursorLoader {
 
     private static final String ORDER_BY = MediaStore.Images.Media.DATE_TAKEN + " DESC";
     private final boolean mEnableCapture;
+    private final boolean mDateSections;
+    private final SortOrder mOrder;
+    // null when the album may span volumes
+    private final String mVolumeName;
+    // set while the volumes are queried, guarded by this
+    private CancellationSignal mVolumeCancellation;
 
-    private AlbumMediaLoader(Context context, String selection, String[] selectionArgs, boolean capture) {
-        super(context, QUERY_URI, PROJECTION, selection, selectionArgs, ORDER_BY);
+    private AlbumMediaLoader(Context context, String volumeName, String selection, String[] selectionArgs,
+                             boolean capture, boolean dateSections, SortOrder order) {
+        super(context, volumeName == null ? QUERY_URI : MediaStore.Files.getContentUri(volumeName),
+                PROJECTION, selection, selectionArgs, order.getOrderBy());
+        mVolumeName = volumeName;
         mEnableCapture = capture;
+        mDateSections = dateSections;
+        mOrder = order;
     }
 
-    public static CursorLoader newInstance(Context context, Album album, boolean capture) {
+    /**
+     * @param dateSections whether to index the result by month, the loaded cursor is then a
+     *                     {@link SectionedCursor}. Ignored unless {@code order} is by date taken.
+     */
+    public static CursorLoader newInstance(Context context, Album album, boolean capture,
+                                           boolean dateSections, SortOrder order) {
         String selection;
         String[] selectionArgs;
         boolean enableCapture;
 
-        if (album.isAll()) {
+        if (album.isAll() || album.isVirtual()) {
             if (SelectionSpec.getInstance().onlyShowGif()) {
                 selection = SELECTION_ALL_FOR_GIF;
                 selectionArgs = getSelectionArgsForGifType(
@@ -156,7 +185,10 @@ public class AlbumMediaLoader extends CursorLoader {
                 selection = SELECTION_ALL;
                 selectionArgs = SELECTION_ALL_ARGS;
             }
-            enableCapture = capture;
+            if (album.isVirtual()) {
+                selection = selection + " AND " + virtualAlbumSelection(album);
+            }
+            enableCapture = capture && album.isAll();
         } else {
             if (SelectionSpec.getInstance().onlyShowGif()) {
                 selection = SELECTION_ALBUM_FOR_GIF;
@@ -180,18 +212,77 @@ public class AlbumMediaLoader extends CursorLoader {
             }
             enableCapture = false;
         }
-        return new AlbumMediaLoader(context, selection, selectionArgs, enableCapture);
+        return new AlbumMediaLoader(context, album.getVolumeName(), selection, selectionArgs, enableCapture,
+                dateSections && order.isByDateTaken(), order);
+    }
+
+    /**
+     * @return condition narrowing the media of "All" to {@code album}, kept in line with how
+     * {@link AlbumLoader} counts it.
+     */
+    private static String virtualAlbumSelection(Album album) {
+        switch (album.getId()) {
+            case Album.ALBUM_ID_VIDEOS:
+                return MediaStore.Files.FileColumns.MEDIA_TYPE + "=" + MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO;
+            case Album.ALBUM_ID_GIFS:
+                return MediaStore.MediaColumns.MIME_TYPE + "='" + MimeType.GIF + "'";
+            case Album.ALBUM_ID_SCREENSHOTS:
+                // LIKE without wildcards compares case-insensitively
+                return "bucket_display_name LIKE '" + AlbumLoader.SCREENSHOTS_BUCKET + "'";
+            case Album.ALBUM_ID_FAVORITES:
+                return AlbumLoader.COLUMN_IS_FAVORITE + "=1";
+            default:
+                throw new IllegalArgumentException("Not a virtual album: " + album.getId());
+        }
     }
 
     @Override
     public Cursor loadInBackground() {
-        Cursor result = super.loadInBackground();
-        if (!mEnableCapture || !MediaStoreCompat.hasCameraFeature(getContext())) {
-            return result;
+        Cursor result = mVolumeName == null && VolumeQuery.hasMultipleVolumes(getContext())
+                ? queryVolumes()
+                : super.loadInBackground();
+        if (mEnableCapture && MediaStoreCompat.hasCameraFeature(getContext())) {
+            MatrixCursor dummy = new MatrixCursor(PROJECTION, 1);
+            dummy.newRow()
+                    .add(Item.ITEM_ID_CAPTURE)
+                    .add(Item.ITEM_DISPLAY_NAME_CAPTURE)
+                    .add("");
+            result = new MergeCursor(new Cursor[]{dummy, result});
+        }
+        if (mDateSections && result != null) {
+            result = SectionedCursor.wrap(getContext(), result);
+        }
+        return result;
+    }
+
+    @Override
+    public void cancelLoadInBackground() {
+        super.cancelLoadInBackground();
+        synchronized (this) {
+            if (mVolumeCancellation != null) {
+                mVolumeCancellation.cancel();
+            }
+        }
+    }
+
+    /**
+     * Runs {@link VolumeQuery#query} with a signal {@link #cancelLoadInBackground()} can cancel.
+     */
+    private Cursor queryVolumes() {
+        CancellationSignal signal;
+        synchronized (this) {
+            if (isLoadInBackgroundCanceled()) {
+                throw new OperationCanceledException();
+            }
+            signal = mVolumeCancellation = new CancellationSignal();
+        }
+        try {
+            return VolumeQuery.query(getContext(), getProjection(), getSelection(), getSelectionArgs(), mOrder, signal);
+        } finally {
+            synchronized (this) {
+                mVolumeCancellation = null;
+            }
         }
-        MatrixCursor dummy = new MatrixCursor(PROJECTION);
-        dummy.addRow(new Object[]{Item.ITEM_ID_CAPTURE, Item.ITEM_DISPLAY_NAME_CAPTURE, "", 0, 0});
-        return new MergeCursor(new Cursor[]{dummy, result});
     }
 
     @Override
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.loader;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.provider.MediaStore;
+import android.text.format.DateUtils;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * A media cursor sorted by {@link MediaStore.Images.Media#DATE_TAKEN}, carrying the cursor
+ * position of the first item of every month. The index is built once on the loader thread, so looking up
+ * a month or the month of a row never touches the rows again.
+ */
+public class SectionedCursor extends CursorWrapper {
+
+    private static final int LABEL_FLAGS = DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_YEAR
+            | DateUtils.FORMAT_NO_MONTH_DAY;
+
+    private final int[] mStarts;
+    private final String[] mLabels;
+
+    private SectionedCursor(Cursor cursor, int[] starts, String[] labels) {
+        super(cursor);
+        mStarts = starts;
+        mLabels = labels;
+    }
+
+    /**
+     * Scans {@code cursor} once. Rows without a date, like the capture entry, stay in the preceding month.
+     */
+    static SectionedCursor wrap(Context context, Cursor cursor) {
+        List<Integer> starts = new ArrayList<>();
+        List<String> labels = new ArrayList<>();
+        int column = cursor.getColumnIndex(MediaStore.Images.Media.DATE_TAKEN);
+        if (column != -1) {
+            Calendar calendar = Calendar.getInstance();
+            long monthStart = Long.MAX_VALUE;
+            long monthEnd = Long.MIN_VALUE;
+            while (cursor.moveToNext()) {
+                long taken = cursor.getLong(column);
+                if (taken <= 0 || (taken >= monthStart && taken < monthEnd)) {
+                    continue;
+                }
+                calendar.setTimeInMillis(taken);
+                calendar.set(Calendar.DAY_OF_MONTH, 1);
+                calendar.set(Calendar.HOUR_OF_DAY, 0);
+                calendar.set(Calendar.MINUTE, 0);
+                calendar.set(Calendar.SECOND, 0);
+                calendar.set(Calendar.MILLISECOND, 0);
+                monthStart = calendar.getTimeInMillis();
+                calendar.add(Calendar.MONTH, 1);
+                monthEnd = calendar.getTimeInMillis();
+
+                starts.add(cursor.getPosition());
+                labels.add(DateUtils.formatDateTime(context, monthStart, LABEL_FLAGS));
+            }
+            cursor.moveToPosition(-1);
+        }
+
+        int[] startArray = new int[starts.size()];
+        for (int i = 0; i < startArray.length; i++) {
+            startArray[i] = starts.get(i);
+        }
+        return new SectionedCursor(cursor, startArray, labels.toArray(new String[0]));
+    }
+
+    public int getSectionCount() {
+        return mStarts.length;
+    }
+
+    /**
+     * @return cursor position of the first item of {@code section}.
+     */
+    public int getSectionStart(int section) {
+        return mStarts[section];
+    }
+
+    /**
+     * @return localized month and year, e.g. "March 2019".
+     */
+    public String[] getSectionLabels() {
+        return mLabels;
+    }
+}
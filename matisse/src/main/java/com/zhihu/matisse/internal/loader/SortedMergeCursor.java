@@ -0,0 +1,229 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.loader;
+
+import android.content.ContentResolver;
+import android.database.AbstractCursor;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.DataSetObserver;
+import android.net.Uri;
+import android.provider.MediaStore;
+
+import com.zhihu.matisse.SortOrder;
+
+/**
+ * Interleaves cursors which are each sorted in the same {@link SortOrder} into one sorted cursor. The merge
+ * is done once up front and only remembers which source row backs every position, the rows themselves are
+ * read from the sources on demand.
+ */
+class SortedMergeCursor extends AbstractCursor {
+
+    private final Cursor[] mCursors;
+    private final byte[] mSourceOf;
+    private final int[] mRowOf;
+    private Cursor mCursor;
+
+    /**
+     * @param cursors at most 127 cursors with the same columns, including {@link SortOrder#getColumn()}.
+     */
+    SortedMergeCursor(Cursor[] cursors, SortOrder order) {
+        mCursors = cursors;
+        int total = 0;
+        for (Cursor cursor : cursors) {
+            total += cursor.getCount();
+        }
+        mSourceOf = new byte[total];
+        mRowOf = new int[total];
+
+        int keyColumn = cursors[0].getColumnIndex(order.getColumn());
+        int idColumn = cursors[0].getColumnIndex(MediaStore.Files.FileColumns._ID);
+        int[] heads = new int[cursors.length];
+        for (Cursor cursor : cursors) {
+            cursor.moveToFirst();
+        }
+        // k is the number of volumes, a linear pick among the heads beats a heap at that size
+        for (int position = 0; position < total; position++) {
+            int best = -1;
+            for (int i = 0; i < cursors.length; i++) {
+                if (heads[i] < cursors[i].getCount() && (best == -1
+                        || compare(cursors[i], cursors[best], keyColumn, idColumn, order.isAscending()) < 0)) {
+                    best = i;
+                }
+            }
+            mSourceOf[position] = (byte) best;
+            mRowOf[position] = heads[best];
+            cursors[best].moveToPosition(++heads[best]);
+        }
+    }
+
+    private static int compare(Cursor a, Cursor b, int keyColumn, int idColumn, boolean ascending) {
+        int result = keyColumn == -1 ? 0 : compareValues(a, b, keyColumn);
+        if (result == 0) {
+            result = compareLongs(a.getLong(idColumn), b.getLong(idColumn));
+        }
+        return ascending ? result : -result;
+    }
+
+    /**
+     * Same as SQLite: null before numbers before text.
+     */
+    private static int compareValues(Cursor a, Cursor b, int column) {
+        int typeA = a.getType(column);
+        int typeB = b.getType(column);
+        if (typeA == Cursor.FIELD_TYPE_NULL || typeB == Cursor.FIELD_TYPE_NULL
+                || (typeA == Cursor.FIELD_TYPE_STRING) != (typeB == Cursor.FIELD_TYPE_STRING)) {
+            return rank(typeA) - rank(typeB);
+        }
+        if (typeA == Cursor.FIELD_TYPE_STRING) {
+            return compareCodePoints(a.getString(column), b.getString(column));
+        }
+        return compareLongs(a.getLong(column), b.getLong(column));
+    }
+
+    /**
+     * Same as SQLite's default BINARY collation over UTF-8, which orders by code point. {@link String#compareTo}
+     * orders by UTF-16 unit and puts characters beyond U+FFFF before U+E000..U+FFFF.
+     */
+    static int compareCodePoints(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        for (int i = 0; i < length; i++) {
+            char ca = a.charAt(i);
+            char cb = b.charAt(i);
+            if (ca != cb) {
+                if (Character.isSurrogate(ca) || Character.isSurrogate(cb)) {
+                    return compareLongs(a.codePointAt(i), b.codePointAt(i));
+                }
+                return ca - cb;
+            }
+        }
+        return a.length() - b.length();
+    }
+
+    private static int rank(int type) {
+        return type == Cursor.FIELD_TYPE_NULL ? 0 : type == Cursor.FIELD_TYPE_STRING ? 2 : 1;
+    }
+
+    private static int compareLongs(long a, long b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+
+    @Override
+    public boolean onMove(int oldPosition, int newPosition) {
+        mCursor = mCursors[mSourceOf[newPosition]];
+        return mCursor.moveToPosition(mRowOf[newPosition]);
+    }
+
+    @Override
+    public int getCount() {
+        return mRowOf.length;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mCursors[0].getColumnNames();
+    }
+
+    @Override
+    public String getString(int column) {
+        return mCursor.getString(column);
+    }
+
+    @Override
+    public short getShort(int column) {
+        return mCursor.getShort(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return mCursor.getInt(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+        return mCursor.getLong(column);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return mCursor.getFloat(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return mCursor.getDouble(column);
+    }
+
+    @Override
+    public byte[] getBlob(int column) {
+        return mCursor.getBlob(column);
+    }
+
+    @Override
+    public int getType(int column) {
+        return mCursor.getType(column);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return mCursor.isNull(column);
+    }
+
+    // the provider notifies the volume cursors, observers go straight to them
+
+    @Override
+    public void registerContentObserver(ContentObserver observer) {
+        for (Cursor cursor : mCursors) {
+            cursor.registerContentObserver(observer);
+        }
+    }
+
+    @Override
+    public void unregisterContentObserver(ContentObserver observer) {
+        for (Cursor cursor : mCursors) {
+            cursor.unregisterContentObserver(observer);
+        }
+    }
+
+    @Override
+    public void registerDataSetObserver(DataSetObserver observer) {
+        for (Cursor cursor : mCursors) {
+            cursor.registerDataSetObserver(observer);
+        }
+    }
+
+    @Override
+    public void unregisterDataSetObserver(DataSetObserver observer) {
+        for (Cursor cursor : mCursors) {
+            cursor.unregisterDataSetObserver(observer);
+        }
+    }
+
+    @Override
+    public void setNotificationUri(ContentResolver cr, Uri notifyUri) {
+        for (Cursor cursor : mCursors) {
+            cursor.setNotificationUri(cr, notifyUri);
+        }
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        for (Cursor cursor : mCursors) {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.loader;
+
+import android.annotation.TargetApi;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.CancellationSignal;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.core.os.OperationCanceledException;
+
+import com.zhihu.matisse.SortOrder;
+import com.zhihu.matisse.internal.utils.DaemonThreadFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Queries the Files table of every external volume (SD cards, USB drives) at once and merges the sorted
+ * results into one snapshot.
+ */
+final class VolumeQuery {
+
+    private static final String TAG = "VolumeQuery";
+    static final String COLUMN_VOLUME_NAME = "volume_name";
+
+    private static final ExecutorService sExecutor =
+            Executors.newCachedThreadPool(new DaemonThreadFactory("VolumeQuery"));
+
+    private VolumeQuery() {
+    }
+
+    /**
+     * @return whether media lives on more than the primary volume, only known from Android 10 (Q).
+     */
+    static boolean hasMultipleVolumes(Context context) {
+        return Build.VERSION.SDK_INT >= 29 && MediaStore.getExternalVolumeNames(context).size() > 1;
+    }
+
+    /**
+     * Queries every external volume in parallel, each sorted by the provider in {@code order}, and merges the
+     * results by {@code order}. The sort column is added to {@code projection} if missing. Volumes which
+     * fail, e.g. ejected during the query, are left out.
+     *
+     * @throws OperationCanceledException if {@code cancellationSignal} was cancelled.
+     */
+    @TargetApi(29)
+    @Nullable
+    static Cursor query(Context context, String[] projection, final String selection,
+                        final String[] selectionArgs, final SortOrder order,
+                        final CancellationSignal cancellationSignal) {
+        final ContentResolver resolver = context.getContentResolver();
+        final String[] columns = withColumn(projection, order.getColumn());
+        Set<String> volumes = MediaStore.getExternalVolumeNames(context);
+
+        List<Future<Cursor>> futures = new ArrayList<>(volumes.size());
+        for (final String volume : volumes) {
+            futures.add(sExecutor.submit(new Callable<Cursor>() {
+                @Override
+                public Cursor call() {
+                    return resolver.query(MediaStore.Files.getContentUri(volume), columns, selection,
+                            selectionArgs, order.getOrderBy(), cancellationSignal);
+                }
+            }));
+        }
+
+        List<Cursor> cursors = new ArrayList<>(futures.size());
+        for (Future<Cursor> future : futures) {
+            try {
+                Cursor cursor = future.get();
+                if (cursor != null) {
+                    cursors.add(cursor);
+                }
+            } catch (ExecutionException e) {
+                Log.w(TAG, "Skip volume", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (Cursor cursor : cursors) {
+                    cursor.close();
+                }
+                return null;
+            }
+        }
+        if (cancellationSignal.isCanceled()) {
+            // the volumes still answering were cut short, a merge of the rest would look complete
+            for (Cursor cursor : cursors) {
+                cursor.close();
+            }
+            throw new OperationCanceledException();
+        }
+        if (cursors.isEmpty()) {
+            return null;
+        }
+        if (cursors.size() == 1) {
+            return cursors.get(0);
+        }
+        return new SortedMergeCursor(cursors.toArray(new Cursor[0]), order);
+    }
+
+    private static String[] withColumn(String[] projection, String column) {
+        if (Arrays.asList(projection).contains(column)) {
+            return projection;
+        }
+        String[] columns = Arrays.copyOf(projection, projection.length + 1);
+        columns[projection.length] = column;
+        return columns;
+    }
+}
@@ -19,22 +19,28 @@ package com.zhihu.matisse.internal.model;
 import android.content.Context;
 import android.database.Cursor;
 import android.os.Bundle;
+import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentActivity;
 import androidx.loader.app.LoaderManager;
 import androidx.loader.content.Loader;
 
+import com.zhihu.matisse.internal.entity.Album;
 import com.zhihu.matisse.internal.loader.AlbumLoader;
 
 import java.lang.ref.WeakReference;
 
 public class AlbumCollection implements LoaderManager.LoaderCallbacks<Cursor> {
     private static final int LOADER_ID = 1;
-    private static final String STATE_CURRENT_SELECTION = "state_current_selection";
+    private static final String STATE_CURRENT_ALBUM_ID = "state_current_album_id";
     private WeakReference<Context> mContext;
     private LoaderManager mLoaderManager;
     private AlbumCallbacks mCallbacks;
     private int mCurrentSelection;
+    // the selection is kept by album, positions move while AlbumLoader is still scanning. Null for "All".
+    private String mCurrentAlbumId;
     private boolean mLoadFinished;
+    // showing the list of AlbumRepository until the loader finishes its scan
+    private boolean mSeeded;
 
     @Override
     public Loader<Cursor> onCreateLoader(int id, Bundle args) {
@@ -49,20 +55,57 @@ public class AlbumCollection implements LoaderManager.LoaderCallbacks<Cursor> {
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
         Context context = mContext.get();
-        if (context == null) {
+        if (context == null || mCallbacks == null) {
             return;
         }
+        boolean partial = AlbumLoader.isPartial(data);
+        if (loader != null) {
+            if (mSeeded && partial) {
+                // the list of the last scan holds more than the first rows of this one
+                return;
+            }
+            if (!partial) {
+                mSeeded = false;
+                AlbumRepository.getInstance().put(AlbumLoader.queryKey(), data);
+            }
+        }
 
-        if (!mLoadFinished) {
+        // AlbumLoader delivers partial lists while scanning, only the first one holding the selected album counts
+        // as loaded, later ones just refresh the counts and may move the album
+        int position = positionOf(data, mCurrentAlbumId);
+        if (position == -1 && !partial) {
+            // the album is gone, fall back to "All"
+            mCurrentAlbumId = null;
+            position = 0;
+        }
+        if (position != -1) {
+            mCurrentSelection = position;
+        }
+        if (!mLoadFinished && position != -1) {
             mLoadFinished = true;
             mCallbacks.onAlbumLoad(data);
+        } else {
+            mCallbacks.onAlbumUpdate(data);
         }
     }
 
+    private static int positionOf(Cursor albums, String albumId) {
+        if (albumId == null) {
+            return albums.getCount() > 0 ? 0 : -1;
+        }
+        int idIndex = albums.getColumnIndex(AlbumLoader.COLUMN_BUCKET_ID);
+        for (int i = 0; albums.moveToPosition(i); i++) {
+            if (albumId.equals(albums.getString(idIndex))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
         Context context = mContext.get();
-        if (context == null) {
+        if (context == null || mCallbacks == null) {
             return;
         }
 
@@ -75,16 +118,25 @@ public class AlbumCollection implements LoaderManager.LoaderCallbacks<Cursor> {
         mCallbacks = callbacks;
     }
 
+    /**
+     * Loads albums in {@code fragment}'s own {@link LoaderManager}, so the loader ids never meet the host's.
+     */
+    public void onCreate(Fragment fragment, AlbumCallbacks callbacks) {
+        mContext = new WeakReference<>(fragment.requireContext());
+        mLoaderManager = LoaderManager.getInstance(fragment);
+        mCallbacks = callbacks;
+    }
+
     public void onRestoreInstanceState(Bundle savedInstanceState) {
         if (savedInstanceState == null) {
             return;
         }
 
-        mCurrentSelection = savedInstanceState.getInt(STATE_CURRENT_SELECTION);
+        mCurrentAlbumId = savedInstanceState.getString(STATE_CURRENT_ALBUM_ID);
     }
 
     public void onSaveInstanceState(Bundle outState) {
-        outState.putInt(STATE_CURRENT_SELECTION, mCurrentSelection);
+        outState.putString(STATE_CURRENT_ALBUM_ID, mCurrentAlbumId);
     }
 
     public void onDestroy() {
@@ -94,21 +146,51 @@ public class AlbumCollection implements LoaderManager.LoaderCallbacks<Cursor> {
         mCallbacks = null;
     }
 
+    /**
+     * Drop the callbacks but keep the loader alive in the {@link LoaderManager}, so that the next
+     * {@link #loadAlbums()} on the same LoaderManager delivers the already scanned albums at once.
+     */
+    public void onDetach() {
+        mCallbacks = null;
+    }
+
+    /**
+     * Starts the loader unless it is running already. A new loader scans from scratch, the list last scanned in
+     * the process is shown meanwhile, see {@link AlbumRepository}.
+     */
     public void loadAlbums() {
+        boolean warm = mLoaderManager.getLoader(LOADER_ID) != null;
         mLoaderManager.initLoader(LOADER_ID, null, this);
+        if (!warm && !mLoadFinished) {
+            Cursor albums = AlbumRepository.getInstance().get(AlbumLoader.queryKey());
+            if (albums != null) {
+                mSeeded = true;
+                onLoadFinished(null, albums);
+            }
+        }
     }
 
+    /**
+     * @return position of the selected album in the list last delivered.
+     */
     public int getCurrentSelection() {
         return mCurrentSelection;
     }
 
-    public void setStateCurrentSelection(int currentSelection) {
+    public void setStateCurrentSelection(int currentSelection, String albumId) {
         mCurrentSelection = currentSelection;
+        mCurrentAlbumId = Album.ALBUM_ID_ALL.equals(albumId) ? null : albumId;
     }
 
     public interface AlbumCallbacks {
         void onAlbumLoad(Cursor cursor);
 
+        /**
+         * A newer album list replaces the one given to {@link #onAlbumLoad(Cursor)}. Albums may have moved, the
+         * selected one is at {@link #getCurrentSelection()}.
+         */
+        void onAlbumUpdate(Cursor cursor);
+
         void onAlbumReset();
     }
 }
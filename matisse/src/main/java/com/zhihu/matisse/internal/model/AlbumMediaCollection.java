@@ -21,22 +21,37 @@ import android.database.Cursor;
 import android.os.Bundle;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentActivity;
 import androidx.loader.app.LoaderManager;
 import androidx.loader.content.Loader;
 
+import com.zhihu.matisse.SortOrder;
 import com.zhihu.matisse.internal.entity.Album;
+import com.zhihu.matisse.internal.entity.SelectionSpec;
 import com.zhihu.matisse.internal.loader.AlbumMediaLoader;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Iterator;
 
 public class AlbumMediaCollection implements LoaderManager.LoaderCallbacks<Cursor> {
+    // loader of the default order, every other order uses LOADER_ID + its ordinal
     private static final int LOADER_ID = 2;
+    // orders whose loaded cursors are kept, switching back to one of them does not query again
+    private static final int MAX_CACHED_ORDERS = 3;
     private static final String ARGS_ALBUM = "args_album";
     private static final String ARGS_ENABLE_CAPTURE = "args_enable_capture";
+    private static final String ARGS_DATE_SECTIONS = "args_date_sections";
+    private static final String ARGS_SORT_ORDER = "args_sort_order";
     private WeakReference<Context> mContext;
     private LoaderManager mLoaderManager;
     private AlbumMediaCallbacks mCallbacks;
+    // most recently used first
+    private final ArrayDeque<Integer> mLoaderIds = new ArrayDeque<>();
+    private int mCurrentLoaderId = LOADER_ID;
+    // loader whose cursor the callbacks show, it stays until a newer one is delivered
+    private int mShownLoaderId = -1;
 
     @Override
     public Loader<Cursor> onCreateLoader(int id, Bundle args) {
@@ -51,23 +66,27 @@ public class AlbumMediaCollection implements LoaderManager.LoaderCallbacks<Curso
         }
 
         return AlbumMediaLoader.newInstance(context, album,
-                album.isAll() && args.getBoolean(ARGS_ENABLE_CAPTURE, false));
+                album.isAll() && args.getBoolean(ARGS_ENABLE_CAPTURE, false),
+                args.getBoolean(ARGS_DATE_SECTIONS, false),
+                (SortOrder) args.getSerializable(ARGS_SORT_ORDER));
     }
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
         Context context = mContext.get();
-        if (context == null) {
+        if (context == null || loader.getId() != mCurrentLoaderId) {
             return;
         }
 
+        mShownLoaderId = mCurrentLoaderId;
         mCallbacks.onAlbumMediaLoad(data);
+        trimLoaders();
     }
 
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
         Context context = mContext.get();
-        if (context == null) {
+        if (context == null || loader.getId() != mCurrentLoaderId) {
             return;
         }
 
@@ -80,10 +99,21 @@ public class AlbumMediaCollection implements LoaderManager.LoaderCallbacks<Curso
         mCallbacks = callbacks;
     }
 
+    public void onCreate(@NonNull Fragment fragment, @NonNull AlbumMediaCallbacks callbacks) {
+        mContext = new WeakReference<>(fragment.requireContext());
+        // the fragment's own loaders, ids stay clear of the ones the host Activity uses
+        mLoaderManager = LoaderManager.getInstance(fragment);
+        mCallbacks = callbacks;
+    }
+
     public void onDestroy() {
         if (mLoaderManager != null) {
-            mLoaderManager.destroyLoader(LOADER_ID);
+            for (int id : mLoaderIds) {
+                mLoaderManager.destroyLoader(id);
+            }
         }
+        mLoaderIds.clear();
+        mShownLoaderId = -1;
         mCallbacks = null;
     }
 
@@ -92,10 +122,45 @@ public class AlbumMediaCollection implements LoaderManager.LoaderCallbacks<Curso
     }
 
     public void load(@Nullable Album target, boolean enableCapture) {
+        load(target, enableCapture, false);
+    }
+
+    public void load(@Nullable Album target, boolean enableCapture, boolean dateSections) {
+        load(target, enableCapture, dateSections, SelectionSpec.getInstance().sortOrder);
+    }
+
+    /**
+     * Loads {@code target} in {@code order}. If one of the last {@link #MAX_CACHED_ORDERS} orders is asked
+     * again, its cursor is delivered right away without querying.
+     */
+    public void load(@Nullable Album target, boolean enableCapture, boolean dateSections,
+                     @NonNull SortOrder order) {
         Bundle args = new Bundle();
         args.putParcelable(ARGS_ALBUM, target);
         args.putBoolean(ARGS_ENABLE_CAPTURE, enableCapture);
-        mLoaderManager.initLoader(LOADER_ID, args, this);
+        args.putBoolean(ARGS_DATE_SECTIONS, dateSections);
+        args.putSerializable(ARGS_SORT_ORDER, order);
+
+        mCurrentLoaderId = LOADER_ID + order.ordinal();
+        mLoaderIds.remove(mCurrentLoaderId);
+        mLoaderIds.addFirst(mCurrentLoaderId);
+        trimLoaders();
+        mLoaderManager.initLoader(mCurrentLoaderId, args, this);
+    }
+
+    /**
+     * Destroys the least recently used loaders beyond {@link #MAX_CACHED_ORDERS}, except the one asked for and
+     * the one still shown while it loads, destroying that would close the cursor under the adapter.
+     */
+    private void trimLoaders() {
+        Iterator<Integer> oldestFirst = mLoaderIds.descendingIterator();
+        while (mLoaderIds.size() > MAX_CACHED_ORDERS && oldestFirst.hasNext()) {
+            int id = oldestFirst.next();
+            if (id != mCurrentLoaderId && id != mShownLoaderId) {
+                oldestFirst.remove();
+                mLoaderManager.destroyLoader(id);
+            }
+        }
     }
 
     public interface AlbumMediaCallbacks {
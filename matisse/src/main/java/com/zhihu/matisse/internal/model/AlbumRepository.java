@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.model;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The album list last scanned in the process, so that a picker opened again shows its albums at once while
+ * {@link com.zhihu.matisse.internal.loader.AlbumLoader} scans them anew. The loaders live with their hosts, the
+ * list outlives them. Call from the main thread only.
+ */
+public final class AlbumRepository {
+
+    private String mKey;
+    private String[] mColumns;
+    private List<String[]> mRows;
+
+    private AlbumRepository() {
+    }
+
+    public static AlbumRepository getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * @return a copy of the list last put for {@code key}, null if there is none.
+     */
+    @Nullable
+    public Cursor get(String key) {
+        if (mRows == null || !key.equals(mKey)) {
+            return null;
+        }
+        MatrixCursor albums = new MatrixCursor(mColumns, mRows.size());
+        for (String[] row : mRows) {
+            albums.addRow(row);
+        }
+        return albums;
+    }
+
+    /**
+     * Keeps a copy of {@code albums}, a complete list, in place of the last one. The cursor is left before its
+     * first row.
+     */
+    public void put(String key, Cursor albums) {
+        String[] columns = albums.getColumnNames();
+        List<String[]> rows = new ArrayList<>(albums.getCount());
+        albums.moveToPosition(-1);
+        while (albums.moveToNext()) {
+            String[] row = new String[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                row[i] = albums.getString(i);
+            }
+            rows.add(row);
+        }
+        albums.moveToPosition(-1);
+        mKey = key;
+        mColumns = columns;
+        mRows = rows;
+    }
+
+    private static final class InstanceHolder {
+        private static final AlbumRepository INSTANCE = new AlbumRepository();
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.model;
+
+import android.content.Context;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.zhihu.matisse.internal.entity.Item;
+import com.zhihu.matisse.internal.utils.DaemonThreadFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * SHA-256 digests of the selected media, e.g. for the host to skip uploading what it has already. Files of up
+ * to {@link #MAX_MAPPED} bytes are mapped at once, larger ones and streams which cannot be mapped are read
+ * through a direct buffer. Digests are remembered by id and date modified, copies by path and last modified,
+ * in a small file in the cache directory. Thread safe.
+ */
+public final class ContentDigests {
+
+    private static final String TAG = "ContentDigests";
+    private static final String ALGORITHM = "SHA-256";
+    private static final String CACHE_FILE = "matisse_digests";
+    private static final int CACHE_VERSION = 1;
+    private static final int MAX_ENTRIES = 2048;
+    private static final int THREADS = 2;
+    // mappings are only let go of by the garbage collector, keep them to one file per thread
+    private static final long MAX_MAPPED = 64 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(THREADS, new DaemonThreadFactory(TAG));
+    private final Map<String, String> mDigests = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private File mCacheFile;
+    private boolean mSaveScheduled;
+
+    private ContentDigests() {
+    }
+
+    public static ContentDigests getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Digests {@code item} in the background unless it is known, so that {@link #digest(Context, Item)} is quick.
+     */
+    public void prefetch(final Context context, final Item item) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                digest(context, item);
+            }
+        });
+    }
+
+    /**
+     * @return the digest of {@code item} as lowercase hex, null if it cannot be read.
+     */
+    @Nullable
+    @WorkerThread
+    public String digest(Context context, Item item) {
+        load(context);
+        String key = item.id + ":" + item.dateModified;
+        synchronized (this) {
+            String digest = mDigests.get(key);
+            if (digest != null) {
+                return digest;
+            }
+        }
+        FileInputStream in = null;
+        try {
+            ParcelFileDescriptor descriptor =
+                    context.getContentResolver().openFileDescriptor(item.getContentUri(), "r");
+            if (descriptor == null) {
+                return null;
+            }
+            in = new ParcelFileDescriptor.AutoCloseInputStream(descriptor);
+            // pipes have no size and cannot be mapped
+            return remember(key, digest(in.getChannel(), descriptor.getStatSize()));
+        } catch (IOException | SecurityException e) {
+            Log.w(TAG, "Cannot digest " + item.getContentUri(), e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * @return the digest of {@code file} as lowercase hex, e.g. of a copy made of an item, null if it cannot be
+     * read.
+     */
+    @Nullable
+    @WorkerThread
+    public String digest(Context context, File file) {
+        load(context);
+        String key = file.getPath() + ":" + file.lastModified();
+        synchronized (this) {
+            String digest = mDigests.get(key);
+            if (digest != null) {
+                return digest;
+            }
+        }
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            return remember(key, digest(in.getChannel(), file.length()));
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot digest " + file, e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static String digest(FileChannel channel, long size) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        boolean mapped = false;
+        if (size > 0 && size <= MAX_MAPPED) {
+            try {
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+                mapped = true;
+            } catch (IOException e) {
+                // e.g. out of address space, the channel is still at its start
+                Log.w(TAG, "Cannot map, reading instead", e);
+            }
+        }
+        if (!mapped) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        byte[] bytes = digest.digest();
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    private synchronized String remember(String key, String digest) {
+        mDigests.put(key, digest);
+        scheduleSave();
+        return digest;
+    }
+
+    private synchronized void load(Context context) {
+        if (mCacheFile != null) {
+            return;
+        }
+        mCacheFile = new File(context.getApplicationContext().getCacheDir(), CACHE_FILE);
+        if (!mCacheFile.exists()) {
+            return;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mCacheFile)));
+            if (in.readInt() != CACHE_VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                mDigests.put(in.readUTF(), in.readUTF());
+            }
+        } catch (EOFException e) {
+            // cut short, keep what was read
+            Log.w(TAG, "Truncated cache");
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot read cache", e);
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void scheduleSave() {
+        if (mSaveScheduled) {
+            return;
+        }
+        mSaveScheduled = true;
+        // coalesces the digests of one Apply into one write
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                save();
+            }
+        });
+    }
+
+    private void save() {
+        List<Map.Entry<String, String>> entries;
+        File file;
+        synchronized (this) {
+            mSaveScheduled = false;
+            entries = new ArrayList<>(mDigests.entrySet());
+            file = mCacheFile;
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            out.writeInt(CACHE_VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, String> e : entries) {
+                out.writeUTF(e.getKey());
+                out.writeUTF(e.getValue());
+            }
+            out.close();
+            out = null;
+            if (!temp.renameTo(file)) {
+                Log.w(TAG, "Cannot replace cache");
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot write cache", e);
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static final class InstanceHolder {
+        private static final ContentDigests INSTANCE = new ContentDigests();
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.model;
+
+import android.content.Context;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+import android.webkit.MimeTypeMap;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.zhihu.matisse.internal.entity.Item;
+import com.zhihu.matisse.internal.utils.DaemonThreadFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies the selected media into a directory of the app, so that the host gets paths it can always read, which
+ * the {@code _data} column does not give from Android 10 (Q). Files are copied with
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)} straight from the provider's
+ * descriptor, on threads of their own, at most as many at once as the selection allows, see
+ * {@link #submit(Runnable, int)}. Copies already made for the same media are reused if of the same size. Files of
+ * the app are moved rather than copied where they can be. Thread safe.
+ */
+public final class FileImporter {
+
+    private static final String TAG = "FileImporter";
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private final ThreadPoolExecutor mExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory(TAG));
+
+    private FileImporter() {
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public static FileImporter getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Runs {@code task}, which imports files, with at most {@code maxCopies} such tasks at a time.
+     */
+    public synchronized Future<?> submit(Runnable task, int maxCopies) {
+        int threads = Math.max(1, maxCopies);
+        if (threads > mExecutor.getMaximumPoolSize()) {
+            mExecutor.setMaximumPoolSize(threads);
+            mExecutor.setCorePoolSize(threads);
+        } else if (threads < mExecutor.getMaximumPoolSize()) {
+            mExecutor.setCorePoolSize(threads);
+            mExecutor.setMaximumPoolSize(threads);
+        }
+        return mExecutor.submit(task);
+    }
+
+    /**
+     * @param directory where to copy to, created if missing.
+     * @return the copy of {@code item}, null if it cannot be read or written.
+     */
+    @Nullable
+    @WorkerThread
+    public File importItem(Context context, Item item, File directory) {
+        String extension = MimeTypeMap.getSingleton().getExtensionFromMimeType(item.mimeType);
+        File target = new File(directory, item.id + "_" + item.dateModified
+                + (extension != null ? "." + extension : ""));
+        if (target.exists() && item.size > 0 && target.length() == item.size) {
+            return target;
+        }
+        FileInputStream in = null;
+        try {
+            ParcelFileDescriptor descriptor =
+                    context.getContentResolver().openFileDescriptor(item.getContentUri(), "r");
+            if (descriptor == null) {
+                return null;
+            }
+            in = new ParcelFileDescriptor.AutoCloseInputStream(descriptor);
+            long size = descriptor.getStatSize();
+            // the provider did not know the size, the descriptor may
+            if (target.exists() && size > 0 && target.length() == size) {
+                return target;
+            }
+            // pipes have no size, they are read to the end instead
+            return copy(in.getChannel(), size, directory, target) ? target : null;
+        } catch (IOException | SecurityException e) {
+            Log.w(TAG, "Cannot import " + item.getContentUri(), e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Same as {@link #importItem(Context, Item, File)} for a file of the app which is not needed where it
+     * is anymore, e.g. a copy made of an item in the cache directory. It is moved if on the same file system.
+     */
+    @Nullable
+    @WorkerThread
+    public File importFile(File source, File directory) {
+        File target = new File(directory, source.getName());
+        if (target.exists() && target.length() == source.length()) {
+            return target;
+        }
+        if ((directory.isDirectory() || directory.mkdirs()) && source.renameTo(target)) {
+            return target;
+        }
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(source);
+            return copy(in.getChannel(), source.length(), directory, target) ? target : null;
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot import " + source, e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static boolean copy(FileChannel in, long size, File directory, File target) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "Cannot create " + directory);
+            return false;
+        }
+        File temp = new File(target.getPath() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            FileChannel channel = out.getChannel();
+            if (size > 0) {
+                long position = 0;
+                while (position < size) {
+                    long copied = in.transferTo(position, size - position, channel);
+                    if (copied <= 0) {
+                        break;
+                    }
+                    position += copied;
+                }
+                if (position < size) {
+                    // shrunk while being copied
+                    return false;
+                }
+            } else {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+                while (in.read(buffer) != -1) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    buffer.clear();
+                }
+            }
+            out.close();
+            out = null;
+            return temp.renameTo(target);
+        } finally {
+            closeQuietly(out);
+            if (temp.exists() && !temp.delete()) {
+                Log.w(TAG, "Cannot delete " + temp);
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static final class InstanceHolder {
+        private static final FileImporter INSTANCE = new FileImporter();
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.model;
+
+import android.content.Context;
+
+import androidx.annotation.Nullable;
+
+import com.zhihu.matisse.filter.Filter;
+import com.zhihu.matisse.filter.FilterStats;
+import com.zhihu.matisse.internal.entity.IncapableCause;
+import com.zhihu.matisse.internal.entity.Item;
+import com.zhihu.matisse.internal.entity.SelectionSpec;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Runs the user {@link Filter}s of {@link SelectionSpec#filters}, the ones cheap to run and likely to reject
+ * first. The order starts from what the filters declare and follows their measured time and rejection rate.
+ * Thread safe, the filters themselves are run outside of the lock.
+ */
+public final class FilterChain {
+
+    // runs before the measured time replaces the declared cost
+    private static final int MIN_SAMPLES = 8;
+    private static final int REORDER_INTERVAL = 16;
+    private static final long[] DECLARED_NANOS = {10_000L, 1_000_000L, 20_000_000L};
+    private static final long IO_NANOS = 5_000_000L;
+
+    private final List<Entry> mOrder = new ArrayList<>();
+    // the list the entries were made for
+    private List<Filter> mFilters;
+    private int mRunsSinceReorder;
+
+    private FilterChain() {
+    }
+
+    public static FilterChain getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * @return the cause of the first filter refusing {@code item}, null if all accept it.
+     */
+    @Nullable
+    public IncapableCause filter(Context context, Item item) {
+        List<Entry> order;
+        synchronized (this) {
+            order = currentOrder();
+        }
+        for (Entry entry : order) {
+            long start = System.nanoTime();
+            IncapableCause cause = entry.mFilter.filter(context, item);
+            long elapsed = System.nanoTime() - start;
+            synchronized (this) {
+                entry.mRuns++;
+                entry.mTotalNanos += elapsed;
+                if (cause != null) {
+                    entry.mRejections++;
+                }
+            }
+            if (cause != null) {
+                return cause;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return how each filter of the current selection performed, in the order they run. A snapshot, asking
+     * does not count as a run nor reorder the chain.
+     */
+    public synchronized List<FilterStats> getStats() {
+        List<Filter> filters = SelectionSpec.getInstance().filters;
+        List<FilterStats> stats = new ArrayList<>();
+        if (isCurrent(filters)) {
+            for (int i = 0; i < mOrder.size(); i++) {
+                Entry entry = mOrder.get(i);
+                stats.add(new FilterStats(entry.mFilter, entry.mRuns, entry.mRejections, entry.mTotalNanos, i));
+            }
+        } else if (filters != null) {
+            // not run since the filters were set
+            for (int i = 0; i < filters.size(); i++) {
+                stats.add(new FilterStats(filters.get(i), 0, 0, 0, i));
+            }
+        }
+        return stats;
+    }
+
+    private boolean isCurrent(List<Filter> filters) {
+        return filters == mFilters && (filters == null || filters.size() == mOrder.size());
+    }
+
+    private List<Entry> currentOrder() {
+        List<Filter> filters = SelectionSpec.getInstance().filters;
+        if (!isCurrent(filters)) {
+            mFilters = filters;
+            mOrder.clear();
+            if (filters != null) {
+                for (Filter filter : filters) {
+                    mOrder.add(new Entry(filter));
+                }
+            }
+            mRunsSinceReorder = REORDER_INTERVAL;
+        }
+        if (++mRunsSinceReorder >= REORDER_INTERVAL) {
+            mRunsSinceReorder = 0;
+            reorder();
+        }
+        return new ArrayList<>(mOrder);
+    }
+
+    /**
+     * Sorts by expected time per rejection, which minimizes the time spent on the chain when the filters
+     * reject independently. Stable, so filters alike keep the order they were added in.
+     */
+    private void reorder() {
+        for (Entry entry : mOrder) {
+            long nanos = entry.mRuns >= MIN_SAMPLES ? entry.mTotalNanos / entry.mRuns : declaredNanos(entry.mFilter);
+            // smoothed so that a filter not seen rejecting yet still gets a place
+            double rejectionRate = (entry.mRejections + 1.0) / (entry.mRuns + 2.0);
+            entry.mRank = nanos / rejectionRate;
+        }
+        Collections.sort(mOrder, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry e1, Entry e2) {
+                return Double.compare(e1.mRank, e2.mRank);
+            }
+        });
+    }
+
+    private static long declaredNanos(Filter filter) {
+        int cost = Math.max(Filter.COST_CHEAP, Math.min(filter.cost(), Filter.COST_EXPENSIVE));
+        return DECLARED_NANOS[cost] + (filter.needsIo() ? IO_NANOS : 0);
+    }
+
+    private static final class Entry {
+        private final Filter mFilter;
+        private long mRuns;
+        private long mRejections;
+        private long mTotalNanos;
+        private double mRank;
+
+        Entry(Filter filter) {
+            mFilter = filter;
+        }
+    }
+
+    private static final class InstanceHolder {
+        private static final FilterChain INSTANCE = new FilterChain();
+    }
+}
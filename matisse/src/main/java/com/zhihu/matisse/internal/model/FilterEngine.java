@@ -0,0 +1,258 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.model;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.Nullable;
+import androidx.collection.LongSparseArray;
+import androidx.collection.LruCache;
+
+import com.zhihu.matisse.R;
+import com.zhihu.matisse.filter.Filter;
+import com.zhihu.matisse.internal.entity.IncapableCause;
+import com.zhihu.matisse.internal.entity.Item;
+import com.zhihu.matisse.internal.entity.SelectionSpec;
+import com.zhihu.matisse.internal.utils.DaemonThreadFactory;
+import com.zhihu.matisse.internal.utils.PhotoMetadataUtils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs {@link PhotoMetadataUtils#isAcceptable(Context, Item)}, the file checks and the user {@link Filter}s, on a
+ * background thread and remembers the verdict by item id, date modified and type for the current filter set, a
+ * verdict made before {@link FormatCache} sniffed the real type of an item does not hold after. Items can
+ * also be checked ahead of a tap with {@link #prefetch(Context, List)}. Call from the main thread only, callbacks
+ * are invoked on it too.
+ */
+public final class FilterEngine {
+
+    private static final long TIMEOUT_MS = 5000;
+    private static final int MAX_VERDICTS = 1000;
+
+    // filters may not be thread safe, they are run one at a time
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("Filter"));
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final LruCache<Long, Verdict> mVerdicts = new LruCache<>(MAX_VERDICTS);
+    private final LongSparseArray<Evaluation> mRunning = new LongSparseArray<>();
+    private final List<Callback> mListeners = new ArrayList<>();
+    // items to check ahead of a tap, handed to the executor one by one so a tap never waits behind them
+    private final ArrayDeque<Item> mPrefetch = new ArrayDeque<>();
+    private Context mPrefetchContext;
+    private boolean mPrefetching;
+    // what the verdicts depend on besides the item
+    private List<Filter> mFilters;
+    private int mMimeTypeMask;
+    private int mGeneration;
+
+    private FilterEngine() {
+    }
+
+    public static FilterEngine getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * @return whether someone waits for a verdict on {@code item}.
+     */
+    public boolean isPending(Item item) {
+        Evaluation evaluation = mRunning.get(item.id);
+        return evaluation != null && !evaluation.mCallbacks.isEmpty();
+    }
+
+    /**
+     * @return whether {@code item} is known to be refused, without evaluating anything.
+     */
+    public boolean isRejected(Item item) {
+        invalidateIfSpecChanged();
+        Verdict verdict = knownVerdict(item);
+        return verdict != null && verdict.mCause != null;
+    }
+
+    /**
+     * Calls back with the verdict on {@code item}, right away if it is known. Otherwise once evaluated, or with a
+     * timeout cause after {@link #TIMEOUT_MS}, the verdict is still remembered when it arrives later.
+     */
+    public void evaluate(final Context context, Item item, Callback callback) {
+        invalidateIfSpecChanged();
+        Verdict verdict = knownVerdict(item);
+        if (verdict != null) {
+            callback.onVerdict(item, verdict.mCause);
+            return;
+        }
+
+        final Evaluation evaluation = mRunning.get(item.id) != null ? mRunning.get(item.id) : start(context, item);
+        evaluation.mCallbacks.add(callback);
+        if (evaluation.mTimeout == null) {
+            evaluation.mTimeout = new Runnable() {
+                @Override
+                public void run() {
+                    evaluation.mTimeout = null;
+                    deliver(evaluation, new IncapableCause(context.getString(R.string.error_check_timeout)));
+                }
+            };
+            mMainHandler.postDelayed(evaluation.mTimeout, TIMEOUT_MS);
+        }
+    }
+
+    /**
+     * Replaces the items to check before they are tapped, e.g. the visible ones. They are evaluated one at a time
+     * behind any tap, items already known or being evaluated are skipped.
+     */
+    public void prefetch(Context context, List<Item> items) {
+        invalidateIfSpecChanged();
+        mPrefetch.clear();
+        for (Item item : items) {
+            if (knownVerdict(item) == null && mRunning.get(item.id) == null) {
+                mPrefetch.add(item);
+            }
+        }
+        mPrefetchContext = context;
+        prefetchNext();
+    }
+
+    /**
+     * Drops the items given to {@link #prefetch(Context, List)} which are not evaluated yet.
+     */
+    public void cancelPrefetch() {
+        mPrefetch.clear();
+        mPrefetchContext = null;
+    }
+
+    /**
+     * @param listener told about every verdict worked out, also the ones nobody waited for.
+     */
+    public void addOnVerdictListener(Callback listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeOnVerdictListener(Callback listener) {
+        mListeners.remove(listener);
+    }
+
+    private void prefetchNext() {
+        while (!mPrefetching && !mPrefetch.isEmpty()) {
+            Item item = mPrefetch.poll();
+            if (mRunning.get(item.id) == null) {
+                mPrefetching = true;
+                start(mPrefetchContext, item).mPrefetch = true;
+            }
+        }
+    }
+
+    private Evaluation start(final Context context, final Item item) {
+        final Evaluation evaluation = new Evaluation(item);
+        mRunning.put(item.id, evaluation);
+        final int generation = mGeneration;
+        final int typeMask = FormatCache.getInstance().typeMaskOf(item);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final IncapableCause cause = PhotoMetadataUtils.isAcceptable(context, item);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (evaluation.mTimeout != null) {
+                            mMainHandler.removeCallbacks(evaluation.mTimeout);
+                            evaluation.mTimeout = null;
+                        }
+                        if (mRunning.get(item.id) == evaluation) {
+                            mRunning.remove(item.id);
+                        }
+                        if (generation == mGeneration) {
+                            mVerdicts.put(item.id, new Verdict(item.dateModified, typeMask, cause));
+                        }
+                        deliver(evaluation, cause);
+                        for (Callback listener : new ArrayList<>(mListeners)) {
+                            listener.onVerdict(item, cause);
+                        }
+                        if (evaluation.mPrefetch) {
+                            mPrefetching = false;
+                            prefetchNext();
+                        }
+                    }
+                });
+            }
+        });
+        return evaluation;
+    }
+
+    private void deliver(Evaluation evaluation, @Nullable IncapableCause cause) {
+        List<Callback> callbacks = new ArrayList<>(evaluation.mCallbacks);
+        evaluation.mCallbacks.clear();
+        for (Callback callback : callbacks) {
+            callback.onVerdict(evaluation.mItem, cause);
+        }
+    }
+
+    @Nullable
+    private Verdict knownVerdict(Item item) {
+        Verdict verdict = mVerdicts.get(item.id);
+        return verdict != null && verdict.mDateModified == item.dateModified
+                && verdict.mTypeMask == FormatCache.getInstance().typeMaskOf(item) ? verdict : null;
+    }
+
+    private void invalidateIfSpecChanged() {
+        SelectionSpec spec = SelectionSpec.getInstance();
+        if (spec.filters != mFilters || spec.mimeTypeMask != mMimeTypeMask) {
+            mFilters = spec.filters;
+            mMimeTypeMask = spec.mimeTypeMask;
+            mGeneration++;
+            mVerdicts.evictAll();
+        }
+    }
+
+    public interface Callback {
+        /**
+         * @param cause null if {@code item} is acceptable.
+         */
+        void onVerdict(Item item, @Nullable IncapableCause cause);
+    }
+
+    private static final class Evaluation {
+        private final Item mItem;
+        private final List<Callback> mCallbacks = new ArrayList<>(1);
+        private Runnable mTimeout;
+        private boolean mPrefetch;
+
+        Evaluation(Item item) {
+            mItem = item;
+        }
+    }
+
+    private static final class Verdict {
+        private final long mDateModified;
+        // the type the item was checked as
+        private final int mTypeMask;
+        private final IncapableCause mCause;
+
+        Verdict(long dateModified, int typeMask, IncapableCause cause) {
+            mDateModified = dateModified;
+            mTypeMask = typeMask;
+            mCause = cause;
+        }
+    }
+
+    private static final class InstanceHolder {
+        private static final FilterEngine INSTANCE = new FilterEngine();
+    }
+}
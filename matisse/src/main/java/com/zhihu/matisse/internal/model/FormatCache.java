@@ -0,0 +1,174 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.model;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.collection.LruCache;
+
+import com.zhihu.matisse.MimeType;
+import com.zhihu.matisse.internal.entity.Item;
+import com.zhihu.matisse.internal.utils.DaemonThreadFactory;
+import com.zhihu.matisse.internal.utils.FormatSniffer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Real formats of the media, sniffed by {@link FormatSniffer} in batches on a background thread as items get
+ * bound, and kept by id and date modified. The media provider derives MIME types from file names, which may lie.
+ * Apart from {@link #typeMaskOf(Item)} and {@link #mimeTypeOf(Item)}, call from the main thread only.
+ */
+public final class FormatCache {
+
+    private static final int BATCH_SIZE = 32;
+    private static final int MAX_ENTRIES = 10000;
+
+    // id to {date modified, type mask}, the mask is 0 if the format is not known
+    private final LruCache<Long, long[]> mEntries = new LruCache<>(MAX_ENTRIES);
+    private final ExecutorService mExecutor =
+            Executors.newSingleThreadExecutor(new DaemonThreadFactory("FormatSniffer"));
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Set<Long> mQueued = new HashSet<>();
+    private final List<OnFormatsChangedListener> mListeners = new ArrayList<>();
+    private ArrayList<Item> mPending = new ArrayList<>();
+    private ContentResolver mResolver;
+
+    private FormatCache() {
+    }
+
+    public static FormatCache getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * @return mask of the types of {@code item}, see {@link MimeType#mask()}. The sniffed one
+     * if known, the one of its MIME type otherwise. Never touches the file.
+     */
+    public int typeMaskOf(Item item) {
+        long[] entry = mEntries.get(item.id);
+        if (entry != null && entry[0] == item.dateModified && entry[1] != 0) {
+            return (int) entry[1];
+        }
+        return item.getTypeMask();
+    }
+
+    /**
+     * @return the MIME type of {@code item}, the one of its sniffed format if known and not what the media
+     * provider tells. Never touches the file.
+     */
+    public String mimeTypeOf(Item item) {
+        int mask = typeMaskOf(item);
+        if ((mask & MimeType.maskOf(item.mimeType)) != 0) {
+            return item.mimeType;
+        }
+        String name = MimeType.nameOf(mask);
+        return name != null ? name : item.mimeType;
+    }
+
+    /**
+     * @return {@code item} with its sniffed type, or as is if not sniffed yet, in which case it is queued.
+     */
+    public Item resolve(Context context, Item item) {
+        long[] entry = mEntries.get(item.id);
+        if (entry == null || entry[0] != item.dateModified) {
+            enqueue(context, item);
+            return item;
+        }
+        return entry[1] == 0 ? item : item.withTypeMask((int) entry[1]);
+    }
+
+    public void addOnFormatsChangedListener(OnFormatsChangedListener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeOnFormatsChangedListener(OnFormatsChangedListener listener) {
+        mListeners.remove(listener);
+    }
+
+    private void enqueue(Context context, Item item) {
+        if (item.isCapture() || !mQueued.add(item.id)) {
+            return;
+        }
+        mResolver = context.getApplicationContext().getContentResolver();
+        mPending.add(item);
+        if (mPending.size() == 1) {
+            // gather what one layout pass binds before going to the background
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            });
+        }
+    }
+
+    private void flush() {
+        final ContentResolver resolver = mResolver;
+        List<Item> pending = mPending;
+        mPending = new ArrayList<>();
+        for (int start = 0; start < pending.size(); start += BATCH_SIZE) {
+            final List<Item> batch = pending.subList(start, Math.min(start + BATCH_SIZE, pending.size()));
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    boolean changed = false;
+                    for (Item item : batch) {
+                        int mask = FormatSniffer.sniff(resolver, item.getContentUri());
+                        mEntries.put(item.id, new long[]{item.dateModified, mask});
+                        // HEIF and HEIC overlap, only a type the MIME type does not tell at all is a change
+                        changed |= mask != 0 && (mask & item.getTypeMask()) == 0;
+                    }
+                    onBatchDone(batch, changed);
+                }
+            });
+        }
+    }
+
+    private void onBatchDone(final List<Item> batch, final boolean changed) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Item item : batch) {
+                    mQueued.remove(item.id);
+                }
+                if (changed) {
+                    for (OnFormatsChangedListener listener : new ArrayList<>(mListeners)) {
+                        listener.onFormatsChanged();
+                    }
+                }
+            }
+        });
+    }
+
+    public interface OnFormatsChangedListener {
+        /**
+         * Some items turned out to be of another type than their MIME type tells.
+         */
+        void onFormatsChanged();
+    }
+
+    private static final class InstanceHolder {
+        private static final FormatCache INSTANCE = new FormatCache();
+    }
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.model;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.zhihu.matisse.MimeType;
+import com.zhihu.matisse.internal.entity.Item;
+import com.zhihu.matisse.internal.entity.SelectionSpec;
+import com.zhihu.matisse.internal.utils.DaemonThreadFactory;
+import com.zhihu.matisse.internal.utils.ExifInterfaceCompat;
+import com.zhihu.matisse.internal.utils.JpegMetadataStripper;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downscales and recompresses the selected images when the user does not ask for the originals, one per core.
+ * Images are decoded with {@code inSampleSize} to no more than twice the long edge asked for and the decodes
+ * in memory at once are bounded by a quarter of the heap. Also copies JPEGs without their metadata, see
+ * {@link JpegMetadataStripper}. Outputs are written to the cache directory and reused for the same image and
+ * settings, the ones older than {@link #MAX_AGE_MS} are deleted. Thread safe.
+ */
+public final class ImageOptimizer {
+
+    private static final String TAG = "ImageOptimizer";
+    private static final String DIRECTORY = "matisse_optimized";
+    private static final int THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private static final long MAX_AGE_MS = TimeUnit.DAYS.toMillis(1);
+    private static final int MB = 1024 * 1024;
+    private static final String MIME_JPEG = "image/jpeg";
+    private static final String MIME_PNG = "image/png";
+
+    private final ThreadPoolExecutor mExecutor = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory(TAG));
+    // megabytes of heap decodes may take at once
+    private final int mMemoryPermits = (int) Math.max(1, Runtime.getRuntime().maxMemory() / 4 / MB);
+    private final Semaphore mMemory = new Semaphore(mMemoryPermits);
+    private boolean mPruned;
+
+    private ImageOptimizer() {
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public static ImageOptimizer getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * @return whether {@link #optimize(Context, Item, int, int)} may make something of {@code item}, GIFs are
+     * left alone as they would lose their animation.
+     */
+    public static boolean accepts(Item item) {
+        return item.isImage() && !item.isGif();
+    }
+
+    /**
+     * @param original whether the user asked for the original images.
+     * @return whether to hand back a copy of {@code item}, only if the selection offers the originals as a choice
+     * and they were not asked for or are too large, see {@link SelectionSpec#originalMaxSize}.
+     */
+    public static boolean shouldOptimize(Item item, boolean original) {
+        SelectionSpec spec = SelectionSpec.getInstance();
+        if (!spec.showOriginal() || !accepts(item)) {
+            return false;
+        }
+        return !original || item.size > (long) spec.originalMaxSize * MB;
+    }
+
+    /**
+     * @return whether to hand back a copy of {@code item} without its metadata, see {@link #strip(Context, Item)}.
+     */
+    public static boolean shouldStrip(Item item) {
+        return SelectionSpec.getInstance().stripMetadata && isJpeg(item);
+    }
+
+    /**
+     * @return whether a copy of {@code item} may be handed back instead of it, depending on what the user picks.
+     */
+    public static boolean mayCopy(Item item) {
+        return (SelectionSpec.getInstance().showOriginal() && accepts(item)) || shouldStrip(item);
+    }
+
+    /**
+     * @return whether {@code item} is a JPEG by its sniffed format, the provider's MIME type follows the file name.
+     */
+    private static boolean isJpeg(Item item) {
+        return (FormatCache.getInstance().typeMaskOf(item) & MimeType.JPEG.mask()) != 0;
+    }
+
+    public Future<?> submit(Runnable task) {
+        return mExecutor.submit(task);
+    }
+
+    /**
+     * @param longEdge the longest side of the output in pixels, smaller images keep their size.
+     * @param quality  JPEG quality of the output, 0 to 100.
+     * @return the output, null if {@code item} cannot be decoded or is smaller as it is.
+     */
+    @Nullable
+    @WorkerThread
+    public Output optimize(Context context, Item item, int longEdge, int quality) {
+        if (!accepts(item)) {
+            return null;
+        }
+        File directory = directory(context);
+        ContentResolver resolver = context.getContentResolver();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        if (!decode(resolver, item, options)) {
+            return null;
+        }
+        int width = options.outWidth;
+        int height = options.outHeight;
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        int orientation = item.orientation != Item.ORIENTATION_UNKNOWN ? item.orientation
+                : item.path != null ? ExifInterfaceCompat.getExifOrientation(item.path) : 0;
+        orientation = Math.max(0, orientation);
+
+        int sampleSize = 1;
+        while (Math.max(width, height) / (sampleSize * 2) >= longEdge) {
+            sampleSize *= 2;
+        }
+        float scale = Math.min(1f, (float) longEdge / (Math.max(width, height) / sampleSize));
+        if (sampleSize == 1 && scale == 1f && orientation == 0 && item.size > 0 && item.size < MB
+                && MIME_JPEG.equals(item.mimeType)) {
+            // small enough as it is
+            return null;
+        }
+
+        String name = item.id + "_" + item.dateModified + "_" + longEdge + "_" + quality;
+        File jpeg = new File(directory, name + ".jpg");
+        File png = new File(directory, name + ".png");
+        if (jpeg.exists()) {
+            return Output.of(jpeg, MIME_JPEG, 0);
+        } else if (png.exists()) {
+            return Output.of(png, MIME_PNG, 0);
+        }
+
+        long decodedBytes = (long) (width / sampleSize) * (height / sampleSize) * 4;
+        int permits = (int) Math.min(mMemoryPermits, decodedBytes * 2 / MB + 1);
+        mMemory.acquireUninterruptibly(permits);
+        Bitmap bitmap = null;
+        Bitmap scaled = null;
+        boolean alpha;
+        File output;
+        try {
+            options = new BitmapFactory.Options();
+            options.inSampleSize = sampleSize;
+            bitmap = decodeBitmap(resolver, item, options);
+            if (bitmap == null) {
+                return null;
+            }
+            // only formats which may have transparency are kept lossless
+            alpha = !MIME_JPEG.equals(item.mimeType) && bitmap.hasAlpha();
+            output = alpha ? png : jpeg;
+            Matrix matrix = new Matrix();
+            matrix.postScale(scale, scale);
+            matrix.postRotate(orientation);
+            scaled = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+            if (!write(scaled, alpha, quality, output)) {
+                return null;
+            }
+        } catch (OutOfMemoryError e) {
+            Log.w(TAG, "Cannot decode " + item.getContentUri(), e);
+            return null;
+        } finally {
+            if (scaled != null && scaled != bitmap) {
+                scaled.recycle();
+            }
+            if (bitmap != null) {
+                bitmap.recycle();
+            }
+            mMemory.release(permits);
+        }
+        if (sampleSize == 1 && scale == 1f && orientation == 0 && item.size > 0 && output.length() >= item.size) {
+            // recompressing made it no smaller
+            delete(output);
+            return null;
+        }
+        return Output.of(output, alpha ? MIME_PNG : MIME_JPEG, 0);
+    }
+
+    /**
+     * @return a copy of {@code item} without its metadata but its orientation, null if it is not a JPEG or
+     * cannot be read.
+     */
+    @Nullable
+    @WorkerThread
+    public Output strip(Context context, Item item) {
+        if (!isJpeg(item)) {
+            return null;
+        }
+        File output = new File(directory(context), item.id + "_" + item.dateModified + "_stripped.jpg");
+        if (!output.exists()) {
+            File temp = new File(output.getPath() + ".tmp");
+            InputStream stream = null;
+            FileOutputStream out = null;
+            try {
+                stream = context.getContentResolver().openInputStream(item.getContentUri());
+                if (stream == null) {
+                    return null;
+                }
+                ReadableByteChannel in = stream instanceof FileInputStream
+                        ? ((FileInputStream) stream).getChannel() : Channels.newChannel(stream);
+                out = new FileOutputStream(temp);
+                boolean stripped = JpegMetadataStripper.strip(in, out.getChannel());
+                out.close();
+                out = null;
+                if (!stripped || !temp.renameTo(output)) {
+                    return null;
+                }
+            } catch (IOException | SecurityException e) {
+                Log.w(TAG, "Cannot strip " + item.getContentUri(), e);
+                return null;
+            } finally {
+                closeQuietly(stream);
+                closeQuietly(out);
+                delete(temp);
+            }
+        }
+        return Output.of(output, MIME_JPEG, Math.max(0, ExifInterfaceCompat.getExifOrientation(output.getPath())));
+    }
+
+    private static boolean decode(ContentResolver resolver, Item item, BitmapFactory.Options options) {
+        InputStream in = null;
+        try {
+            in = resolver.openInputStream(item.getContentUri());
+            if (in == null) {
+                return false;
+            }
+            BitmapFactory.decodeStream(in, null, options);
+            return true;
+        } catch (IOException | SecurityException e) {
+            Log.w(TAG, "Cannot open " + item.getContentUri(), e);
+            return false;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    @Nullable
+    private static Bitmap decodeBitmap(ContentResolver resolver, Item item, BitmapFactory.Options options) {
+        InputStream in = null;
+        try {
+            in = resolver.openInputStream(item.getContentUri());
+            return in != null ? BitmapFactory.decodeStream(in, null, options) : null;
+        } catch (IOException | SecurityException e) {
+            Log.w(TAG, "Cannot open " + item.getContentUri(), e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static boolean write(Bitmap bitmap, boolean alpha, int quality, File output) {
+        File temp = new File(output.getPath() + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(temp));
+            if (!bitmap.compress(alpha ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG, quality, out)) {
+                return false;
+            }
+            out.close();
+            out = null;
+            return temp.renameTo(output);
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot write " + output, e);
+            return false;
+        } finally {
+            closeQuietly(out);
+            delete(temp);
+        }
+    }
+
+    private synchronized File directory(Context context) {
+        File directory = new File(context.getCacheDir(), DIRECTORY);
+        if (!mPruned) {
+            mPruned = true;
+            File[] files = directory.listFiles();
+            long now = System.currentTimeMillis();
+            if (files != null) {
+                for (File file : files) {
+                    if (now - file.lastModified() > MAX_AGE_MS) {
+                        delete(file);
+                    }
+                }
+            }
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "Cannot create " + directory);
+        }
+        return directory;
+    }
+
+    private static void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Cannot delete " + file);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static final class Output {
+        public final File file;
+        public final String mimeType;
+        // as stored, before orientation is applied
+        public final int width;
+        public final int height;
+        public final int orientation; // in degrees, clockwise
+
+        private Output(File file, String mimeType, int width, int height, int orientation) {
+            this.file = file;
+            this.mimeType = mimeType;
+            this.width = width;
+            this.height = height;
+            this.orientation = orientation;
+        }
+
+        static Output of(File file, String mimeType, int orientation) {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(file.getPath(), options);
+            return new Output(file, mimeType, options.outWidth, options.outHeight, orientation);
+        }
+    }
+
+    private static final class InstanceHolder {
+        private static final ImageOptimizer INSTANCE = new ImageOptimizer();
+    }
+}
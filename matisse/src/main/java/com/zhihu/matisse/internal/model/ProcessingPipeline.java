@@ -0,0 +1,244 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.model;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.collection.LongSparseArray;
+
+import com.zhihu.matisse.internal.entity.Item;
+import com.zhihu.matisse.internal.entity.SelectionSpec;
+import com.zhihu.matisse.internal.utils.DaemonThreadFactory;
+import com.zhihu.matisse.processor.Processor;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the {@link Processor} of the selection on each item as it is checked and cancels it when unchecked, so
+ * that Apply only has to collect the outputs already written. At most {@link SelectionSpec#processingThreads}
+ * items are processed at a time and outputs which would take more than {@link SelectionSpec#processingDiskBudget}
+ * bytes in all are dropped. Outputs are kept in the cache directory until the next selection starts. Call from the
+ * main thread only.
+ */
+public final class ProcessingPipeline {
+
+    private static final String TAG = "ProcessingPipeline";
+    private static final String DIRECTORY = "matisse_processed";
+
+    private final ThreadPoolExecutor mExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory(TAG));
+    private final LongSparseArray<Job> mJobs = new LongSparseArray<>();
+    // numbers the jobs, a cancelled job may still be running when its item is checked again
+    private int mJobCount;
+    // guarded by this, bytes taken by the outputs written in this selection
+    private long mUsedBytes;
+    // guarded by this, whether the outputs of the last selection are deleted
+    private boolean mSwept;
+
+    private ProcessingPipeline() {
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public static ProcessingPipeline getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Starts a new selection, its outputs replace the ones of the last.
+     */
+    public void reset() {
+        cancelAll();
+        synchronized (this) {
+            mUsedBytes = 0;
+            mSwept = false;
+        }
+    }
+
+    /**
+     * Starts processing {@code item} if the selection has a {@link Processor} and it is not under way already.
+     */
+    public void start(Context context, Item item) {
+        SelectionSpec spec = SelectionSpec.getInstance();
+        Processor processor = spec.processor;
+        if (processor == null || mJobs.get(item.id) != null) {
+            return;
+        }
+        setThreads(Math.max(1, spec.processingThreads));
+        Job job = new Job(context.getApplicationContext(), processor, item, ++mJobCount);
+        mJobs.put(item.id, job);
+        job.mFuture = mExecutor.submit(job);
+    }
+
+    /**
+     * Stops processing {@code item} and deletes its output, e.g. once it is unchecked.
+     */
+    public void cancel(Item item) {
+        Job job = mJobs.get(item.id);
+        if (job == null) {
+            return;
+        }
+        mJobs.remove(item.id);
+        discard(job);
+    }
+
+    public void cancelAll() {
+        for (int i = 0; i < mJobs.size(); i++) {
+            discard(mJobs.valueAt(i));
+        }
+        mJobs.clear();
+    }
+
+    /**
+     * @return the output path of each item in the same order, null for items not processed yet.
+     */
+    public synchronized ArrayList<String> outputsOf(List<Item> items) {
+        ArrayList<String> outputs = new ArrayList<>(items.size());
+        for (Item item : items) {
+            Job job = mJobs.get(item.id);
+            outputs.add(job != null && job.mDone ? job.mOutput.getPath() : null);
+        }
+        return outputs;
+    }
+
+    /**
+     * Leaves the outputs written to the host, which got them from {@link #outputsOf(List)}, and stops the work
+     * left once the result is handed back.
+     */
+    public void handOver() {
+        synchronized (this) {
+            for (int i = mJobs.size() - 1; i >= 0; i--) {
+                if (mJobs.valueAt(i).mDone) {
+                    mJobs.removeAt(i);
+                }
+            }
+        }
+        cancelAll();
+    }
+
+    private void setThreads(int threads) {
+        if (threads > mExecutor.getMaximumPoolSize()) {
+            mExecutor.setMaximumPoolSize(threads);
+            mExecutor.setCorePoolSize(threads);
+        } else if (threads < mExecutor.getMaximumPoolSize()) {
+            mExecutor.setCorePoolSize(threads);
+            mExecutor.setMaximumPoolSize(threads);
+        }
+    }
+
+    private void discard(final Job job) {
+        job.mFuture.cancel(true);
+        boolean written;
+        synchronized (this) {
+            job.mCancelled = true;
+            written = job.mDone;
+            if (written) {
+                mUsedBytes -= job.mBytes;
+                job.mDone = false;
+            }
+        }
+        if (written) {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    delete(job.mOutput);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the directory of the outputs, emptied of the ones of the last selection.
+     */
+    private synchronized File directory(Context context) {
+        File directory = new File(context.getCacheDir(), DIRECTORY);
+        if (!mSwept) {
+            mSwept = true;
+            File[] stale = directory.listFiles();
+            if (stale != null) {
+                for (File file : stale) {
+                    delete(file);
+                }
+            }
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "Cannot create " + directory);
+        }
+        return directory;
+    }
+
+    private static void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Cannot delete " + file);
+        }
+    }
+
+    private final class Job implements Runnable {
+        private final Context mContext;
+        private final Processor mProcessor;
+        private final Item mItem;
+        private final int mNumber;
+        private File mOutput;
+        private Future<?> mFuture;
+        // guarded by ProcessingPipeline.this
+        private boolean mCancelled;
+        private boolean mDone;
+        private long mBytes;
+
+        Job(Context context, Processor processor, Item item, int number) {
+            mContext = context;
+            mProcessor = processor;
+            mItem = item;
+            mNumber = number;
+        }
+
+        @Override
+        public void run() {
+            // a file of its own, so that a job cancelled but still running never touches the output of the next
+            File output = new File(directory(mContext), mItem.id + "_" + mItem.dateModified + "_" + mNumber);
+            boolean processed = false;
+            try {
+                mProcessor.process(mContext, ResultAssembler.toSelectedItem(mItem, mItem.path,
+                        VideoProbe.getInstance().peek(mContext, mItem)), output);
+                processed = !Thread.currentThread().isInterrupted();
+            } catch (Exception e) {
+                Log.w(TAG, "Cannot process " + mItem.getContentUri(), e);
+            }
+            long bytes = output.length();
+            synchronized (ProcessingPipeline.this) {
+                mOutput = output;
+                long budget = SelectionSpec.getInstance().processingDiskBudget;
+                if (processed && !mCancelled && output.exists() && mUsedBytes + bytes <= budget) {
+                    mDone = true;
+                    mBytes = bytes;
+                    mUsedBytes += bytes;
+                    return;
+                }
+            }
+            delete(output);
+        }
+    }
+
+    private static final class InstanceHolder {
+        private static final ProcessingPipeline INSTANCE = new ProcessingPipeline();
+    }
+}
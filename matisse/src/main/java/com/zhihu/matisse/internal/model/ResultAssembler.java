@@ -0,0 +1,381 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.model;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.Nullable;
+
+import com.zhihu.matisse.SelectedItem;
+import com.zhihu.matisse.internal.entity.Item;
+import com.zhihu.matisse.internal.entity.SelectionSpec;
+import com.zhihu.matisse.internal.entity.VideoInfo;
+import com.zhihu.matisse.internal.utils.DaemonThreadFactory;
+import com.zhihu.matisse.internal.utils.PathResolver;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Works out the uris and paths handed back for the selected items on background threads, the paths in one go
+ * through {@link PathResolver}. Optionally drops the items gone from the media provider and counts the videos
+ * which cannot be played, see {@link VideoProbe}, a few items at a time. Optionally hands back downscaled copies
+ * of the images or copies without their metadata instead, see {@link ImageOptimizer}, and copies the items into
+ * a directory of the app if asked to, see {@link FileImporter}. Call from the main thread only, the
+ * callback is invoked on it too and not anymore once cancelled.
+ */
+public final class ResultAssembler {
+
+    private static final int THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final ThreadPoolExecutor sExecutor = new ThreadPoolExecutor(THREADS, THREADS,
+            30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("ResultAssembler"));
+
+    static {
+        sExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    private final Context mContext;
+    private final List<Item> mItems;
+    private final boolean mValidate;
+    private final boolean mOriginal;
+    private final Callback mCallback;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Entry[] mEntries;
+    private final List<Future<?>> mFutures = new ArrayList<>();
+    private int mDone;
+    private boolean mStarted;
+    private boolean mCancelled;
+    private boolean mFinished;
+    private List<String> mPaths;
+
+    /**
+     * @param validate whether to check that the items still exist and that the videos can be played.
+     * @param original whether the user asked for the original images, downscaled copies are handed back if not.
+     */
+    public ResultAssembler(Context context, List<Item> items, boolean validate, boolean original,
+                           Callback callback) {
+        mContext = context.getApplicationContext();
+        mItems = new ArrayList<>(items);
+        mValidate = validate;
+        mOriginal = original;
+        mCallback = callback;
+        mEntries = new Entry[mItems.size()];
+    }
+
+    public void start() {
+        if (mStarted) {
+            return;
+        }
+        mStarted = true;
+        if (mItems.isEmpty()) {
+            mFinished = true;
+            mCallback.onAssembled(new Result(new ArrayList<Uri>(), new ArrayList<String>(),
+                    new ArrayList<SelectedItem>(), ProcessingPipeline.getInstance().outputsOf(mItems),
+                    new ArrayList<String>(), 0, 0, 0));
+            return;
+        }
+        // all paths at once, in parallel with the checks
+        mFutures.add(sExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                List<String> resolved;
+                try {
+                    resolved = PathResolver.resolveItems(mContext, mItems);
+                } catch (RuntimeException e) {
+                    // e.g. the provider refusing, hand the uris back without paths as before
+                    resolved = new ArrayList<>(Collections.<String>nCopies(mItems.size(), null));
+                }
+                final List<String> paths = resolved;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPaths(paths);
+                    }
+                });
+            }
+        }));
+        final SelectionSpec spec = SelectionSpec.getInstance();
+        for (int i = 0; i < mItems.size(); i++) {
+            final int index = i;
+            final Item item = mItems.get(i);
+            final boolean optimize = ImageOptimizer.shouldOptimize(item, mOriginal);
+            final boolean strip = ImageOptimizer.shouldStrip(item);
+            final boolean digest = spec.computeDigests;
+            final File importDirectory = spec.importDirectory;
+            if (!mValidate && !optimize && !strip && !digest && importDirectory == null) {
+                mEntries[i] = new Entry(item, false, false, VideoProbe.getInstance().peek(mContext, item));
+                mDone++;
+                continue;
+            }
+            Runnable task = new Runnable() {
+                @Override
+                public void run() {
+                    Entry checked;
+                    try {
+                        checked = mValidate ? check(item)
+                                : new Entry(item, false, false, VideoProbe.getInstance().peek(mContext, item));
+                    } catch (RuntimeException e) {
+                        checked = new Entry(item, false, false, null);
+                    }
+                    ImageOptimizer optimizer = ImageOptimizer.getInstance();
+                    if (optimize && !checked.mRemoved) {
+                        checked.mCopy = optimizer.optimize(mContext, item, spec.optimizeLongEdge,
+                                spec.optimizeQuality);
+                    }
+                    // downscaled copies carry no metadata already
+                    if (strip && !checked.mRemoved && checked.mCopy == null) {
+                        checked.mCopy = optimizer.strip(mContext, item);
+                        // never hand back the original with the metadata the caller asked to have stripped
+                        checked.mUnstripped = checked.mCopy == null;
+                    }
+                    if (digest && !checked.mRemoved && !checked.mUnstripped) {
+                        ContentDigests digests = ContentDigests.getInstance();
+                        checked.mDigest = checked.mCopy != null ? digests.digest(mContext, checked.mCopy.file)
+                                : digests.digest(mContext, item);
+                    }
+                    final Entry entry = checked;
+                    final boolean copy = importDirectory != null && !entry.mRemoved && !entry.mUnstripped;
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (copy) {
+                                importEntry(index, entry, importDirectory, spec.importThreads);
+                            } else {
+                                onEntry(index, entry);
+                            }
+                        }
+                    });
+                }
+            };
+            // decoding is bound by the cores, not by the provider
+            mFutures.add(optimize || strip ? ImageOptimizer.getInstance().submit(task) : sExecutor.submit(task));
+        }
+    }
+
+    /**
+     * Stops the work left, items being worked on are let finish but not reported.
+     */
+    public void cancel() {
+        mCancelled = true;
+        for (Future<?> future : mFutures) {
+            future.cancel(true);
+        }
+        mFutures.clear();
+    }
+
+    public boolean isRunning() {
+        return mStarted && !mCancelled && !mFinished;
+    }
+
+    /**
+     * Copies {@code entry} into {@code directory} on the threads of {@link FileImporter}, so that the copies at
+     * a time are bound by {@code maxCopies} rather than by the threads here.
+     */
+    private void importEntry(final int index, final Entry entry, final File directory, int maxCopies) {
+        if (mCancelled) {
+            return;
+        }
+        mFutures.add(FileImporter.getInstance().submit(new Runnable() {
+            @Override
+            public void run() {
+                FileImporter importer = FileImporter.getInstance();
+                entry.mImported = entry.mCopy != null ? importer.importFile(entry.mCopy.file, directory)
+                        : importer.importItem(mContext, entry.mItem, directory);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onEntry(index, entry);
+                    }
+                });
+            }
+        }, maxCopies));
+    }
+
+    private void onEntry(int index, Entry entry) {
+        if (mCancelled) {
+            return;
+        }
+        mEntries[index] = entry;
+        mDone++;
+        mCallback.onProgress(mDone, mItems.size());
+        finishIfDone();
+    }
+
+    private void onPaths(List<String> paths) {
+        if (mCancelled) {
+            return;
+        }
+        mPaths = paths;
+        finishIfDone();
+    }
+
+    private void finishIfDone() {
+        if (mDone < mItems.size() || mPaths == null) {
+            return;
+        }
+        mFinished = true;
+        ArrayList<Uri> uris = new ArrayList<>(mEntries.length);
+        ArrayList<String> paths = new ArrayList<>(mEntries.length);
+        ArrayList<SelectedItem> items = new ArrayList<>(mEntries.length);
+        ArrayList<String> digests = new ArrayList<>(mEntries.length);
+        List<Item> kept = new ArrayList<>(mEntries.length);
+        int removed = 0;
+        int broken = 0;
+        int unstripped = 0;
+        for (int i = 0; i < mEntries.length; i++) {
+            Entry entry = mEntries[i];
+            if (entry.mRemoved) {
+                removed++;
+                continue;
+            }
+            if (entry.mUnstripped) {
+                unstripped++;
+                continue;
+            }
+            if (entry.mBroken) {
+                broken++;
+            }
+            kept.add(entry.mItem);
+            digests.add(entry.mDigest);
+            if (entry.mCopy != null) {
+                ImageOptimizer.Output output = entry.mCopy;
+                // the copy is moved rather than copied on import
+                File file = entry.mImported != null ? entry.mImported : output.file;
+                Uri uri = Uri.fromFile(file);
+                ThumbnailHandoff.getInstance().rename(entry.mItem.getContentUri(), uri);
+                String path = file.getPath();
+                uris.add(uri);
+                paths.add(path);
+                items.add(new SelectedItem(uri, path, output.mimeType, file.length(),
+                        output.width, output.height, output.orientation, 0, entry.mItem.dateTaken,
+                        entry.mItem.dateModified));
+                continue;
+            }
+            // the provider's path if the item could not be imported
+            String path = entry.mImported != null ? entry.mImported.getPath() : mPaths.get(i);
+            uris.add(entry.mItem.getContentUri());
+            paths.add(path);
+            items.add(entry.toSelectedItem(path));
+        }
+        mFutures.clear();
+        ThumbnailHandoff.getInstance().retain(uris);
+        ArrayList<String> processed = ProcessingPipeline.getInstance().outputsOf(kept);
+        mCallback.onAssembled(new Result(uris, paths, items, processed, digests, removed, broken,
+                unstripped));
+    }
+
+    private Entry check(Item item) {
+        String mimeType = mContext.getContentResolver().getType(item.getContentUri());
+        if (mimeType == null) {
+            return new Entry(item, true, false, null);
+        }
+        if (!mimeType.contains("video")) {
+            return new Entry(item, false, false, null);
+        }
+        VideoInfo video = VideoProbe.getInstance().probe(mContext, item);
+        return new Entry(item, false, !video.decodable, video);
+    }
+
+    /**
+     * @param video what was probed of {@code item}, null if not a video or not probed.
+     */
+    static SelectedItem toSelectedItem(Item item, @Nullable String path, @Nullable VideoInfo video) {
+        int width = item.width;
+        int height = item.height;
+        int orientation = item.orientation == Item.ORIENTATION_UNKNOWN ? 0 : item.orientation;
+        long duration = item.duration;
+        if (video != null && video.duration > 0) {
+            width = video.width;
+            height = video.height;
+            orientation = video.rotation;
+            duration = video.duration;
+        }
+        // the provider's MIME type follows the file name, which may lie
+        String mimeType = FormatCache.getInstance().mimeTypeOf(item);
+        return new SelectedItem(item.getContentUri(), path, mimeType, item.size, width, height,
+                orientation, duration, item.dateTaken, item.dateModified);
+    }
+
+    public interface Callback {
+        void onProgress(int done, int total);
+
+        void onAssembled(Result result);
+    }
+
+    public static final class Result {
+        public final ArrayList<Uri> uris;
+        public final ArrayList<String> paths;
+        public final ArrayList<SelectedItem> items;
+        // outputs of the ProcessingPipeline finished in time, null for the others
+        public final ArrayList<String> processedPaths;
+        // SHA-256 digests as hex if asked for, null for the items which could not be read
+        public final ArrayList<String> digests;
+        // items which no longer exist, left out of uris and paths
+        public final int removedCount;
+        // videos which cannot be played, still in uris and paths
+        public final int brokenCount;
+        // JPEGs whose metadata could not be stripped, left out of uris and paths
+        public final int unstrippedCount;
+
+        Result(ArrayList<Uri> uris, ArrayList<String> paths, ArrayList<SelectedItem> items,
+               ArrayList<String> processedPaths, ArrayList<String> digests, int removedCount, int brokenCount,
+               int unstrippedCount) {
+            this.uris = uris;
+            this.paths = paths;
+            this.items = items;
+            this.processedPaths = processedPaths;
+            this.digests = digests;
+            this.removedCount = removedCount;
+            this.brokenCount = brokenCount;
+            this.unstrippedCount = unstrippedCount;
+        }
+    }
+
+    private static final class Entry {
+        private final Item mItem;
+        private final boolean mRemoved;
+        private final boolean mBroken;
+        // what was probed of a video, null for images or if not probed
+        private final VideoInfo mVideo;
+        // the copy handed back instead, if any
+        private ImageOptimizer.Output mCopy;
+        // asked to be stripped of its metadata but could not be, dropped
+        private boolean mUnstripped;
+        private String mDigest;
+        // the copy in the import directory, if any
+        private File mImported;
+
+        Entry(Item item, boolean removed, boolean broken, VideoInfo video) {
+            mItem = item;
+            mRemoved = removed;
+            mBroken = broken;
+            mVideo = video;
+        }
+
+        SelectedItem toSelectedItem(String path) {
+            return ResultAssembler.toSelectedItem(mItem, path, mVideo);
+        }
+    }
+}
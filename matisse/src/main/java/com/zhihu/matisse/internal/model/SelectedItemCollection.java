@@ -25,7 +25,6 @@ import com.zhihu.matisse.internal.entity.IncapableCause;
 import com.zhihu.matisse.internal.entity.Item;
 import com.zhihu.matisse.internal.entity.SelectionSpec;
 import com.zhihu.matisse.internal.ui.widget.CheckView;
-import com.zhihu.matisse.internal.utils.PathUtils;
 import com.zhihu.matisse.internal.utils.PhotoMetadataUtils;
 
 import java.util.ArrayList;
@@ -82,10 +81,13 @@ public class SelectedItemCollection {
             mCollectionType = bundle.getInt(STATE_COLLECTION_TYPE, COLLECTION_UNDEFINED);
             refineCollectionType();
         }
+        // the host knows of these already
+        SelectionStream.getInstance().reset(mContext, mItems);
     }
 
     public void setDefaultSelection(List<Item> uris) {
         mItems.addAll(uris);
+        SelectionStream.getInstance().reset(mContext, mItems);
     }
 
     public void onSaveInstanceState(Bundle outState) {
@@ -121,6 +123,7 @@ public class SelectedItemCollection {
                     mCollectionType = COLLECTION_MIXED;
                 }
             }
+            SelectionStream.getInstance().publish(mContext, mItems);
         }
         return added;
     }
@@ -135,6 +138,7 @@ public class SelectedItemCollection {
                     refineCollectionType();
                 }
             }
+            SelectionStream.getInstance().publish(mContext, mItems);
         }
         return removed;
     }
@@ -142,6 +146,7 @@ public class SelectedItemCollection {
     public void clear() {
         mItems.clear();
         mCollectionType = COLLECTION_UNDEFINED;
+        SelectionStream.getInstance().publish(mContext, mItems);
     }
 
     public void overwrite(ArrayList<Item> items, int collectionType) {
@@ -152,6 +157,7 @@ public class SelectedItemCollection {
         }
         mItems.clear();
         mItems.addAll(items);
+        SelectionStream.getInstance().publish(mContext, mItems);
     }
 
 
@@ -167,14 +173,6 @@ public class SelectedItemCollection {
         return uris;
     }
 
-    public List<String> asListOfString() {
-        List<String> paths = new ArrayList<>();
-        for (Item item : mItems) {
-            paths.add(PathUtils.getPath(mContext, item.getContentUri()));
-        }
-        return paths;
-    }
-
     public boolean isEmpty() {
         return mItems == null || mItems.isEmpty();
     }
@@ -184,6 +182,29 @@ public class SelectedItemCollection {
     }
 
     public IncapableCause isAcceptable(Item item) {
+        IncapableCause cause = selectionCause(item);
+        return cause != null ? cause : PhotoMetadataUtils.isAcceptable(mContext, item);
+    }
+
+    /**
+     * Same as {@link #isAcceptable(Item)}, with the checks of the item itself run by {@link FilterEngine}. The
+     * limits of the selection are checked again when a pending verdict arrives, they may have changed meanwhile.
+     */
+    public void checkAcceptable(Item item, final FilterEngine.Callback callback) {
+        IncapableCause cause = selectionCause(item);
+        if (cause != null) {
+            callback.onVerdict(item, cause);
+            return;
+        }
+        FilterEngine.getInstance().evaluate(mContext, item, new FilterEngine.Callback() {
+            @Override
+            public void onVerdict(Item item, IncapableCause cause) {
+                callback.onVerdict(item, cause != null ? cause : selectionCause(item));
+            }
+        });
+    }
+
+    private IncapableCause selectionCause(Item item) {
         MaxItemReach reach = maxSelectableReached(item);
         if (reach != MaxItemReach.NOT_REACH) {
             int maxSelectable = currentMaxSelectable();
@@ -235,8 +256,7 @@ public class SelectedItemCollection {
         } else if (typeConflict(item)) {
             return new IncapableCause(mContext.getString(R.string.error_type_conflict));
         }
-
-        return PhotoMetadataUtils.isAcceptable(mContext, item);
+        return null;
     }
 
     public MaxItemReach maxSelectableReached(Item item) {
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.model;
+
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.collection.LongSparseArray;
+
+import com.zhihu.matisse.internal.entity.Item;
+import com.zhihu.matisse.internal.entity.SelectionSpec;
+import com.zhihu.matisse.listener.OnSelectedListener;
+import com.zhihu.matisse.listener.OnSelectionChangedListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Tells the host's {@link OnSelectionChangedListener} and {@link OnSelectedListener} how the selection changes,
+ * and has the {@link ProcessingPipeline} start and cancel the processing of the items checked and unchecked.
+ * Also has the {@link ContentDigests} of the items checked worked out ahead of Apply.
+ * The grid and the preview screens each hold a copy of the selection, so changes are worked out against the
+ * selection last reported rather than per copy, which reports each change once. Call from the main thread only.
+ */
+public final class SelectionStream {
+
+    private LongSparseArray<Item> mReported = new LongSparseArray<>();
+
+    private SelectionStream() {
+    }
+
+    public static SelectionStream getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Takes {@code items} as known to the host without reporting them, e.g. the selection the picker starts with.
+     * Their processing is started all the same, the items already under way are left as they are.
+     */
+    public void reset(Context context, Collection<Item> items) {
+        mReported = toArray(items);
+        ProcessingPipeline pipeline = ProcessingPipeline.getInstance();
+        for (Item item : items) {
+            pipeline.start(context, item);
+        }
+    }
+
+    /**
+     * Reports how {@code items} differ from the selection last reported.
+     */
+    public void publish(Context context, Collection<Item> items) {
+        LongSparseArray<Item> current = toArray(items);
+        List<Item> removed = new ArrayList<>();
+        for (int i = 0; i < mReported.size(); i++) {
+            if (current.indexOfKey(mReported.keyAt(i)) < 0) {
+                removed.add(mReported.valueAt(i));
+            }
+        }
+        List<Item> added = new ArrayList<>();
+        for (Item item : items) {
+            if (mReported.indexOfKey(item.id) < 0) {
+                added.add(item);
+            }
+        }
+        mReported = current;
+        if (removed.isEmpty() && added.isEmpty()) {
+            return;
+        }
+
+        ProcessingPipeline pipeline = ProcessingPipeline.getInstance();
+        for (Item item : removed) {
+            pipeline.cancel(item);
+        }
+        for (Item item : added) {
+            pipeline.start(context, item);
+        }
+
+        SelectionSpec spec = SelectionSpec.getInstance();
+        if (spec.computeDigests) {
+            for (Item item : added) {
+                // copies are digested once made at Apply
+                if (!ImageOptimizer.mayCopy(item)) {
+                    ContentDigests.getInstance().prefetch(context.getApplicationContext(), item);
+                }
+            }
+        }
+        OnSelectionChangedListener changedListener = spec.onSelectionChangedListener;
+        if (changedListener != null) {
+            for (Item item : removed) {
+                changedListener.onItemRemoved(item.getContentUri());
+            }
+            for (Item item : added) {
+                changedListener.onItemAdded(ResultAssembler.toSelectedItem(item, item.path,
+                        VideoProbe.getInstance().peek(context, item)));
+            }
+        }
+        if (spec.onSelectedListener != null) {
+            List<Uri> uris = new ArrayList<>(items.size());
+            List<String> paths = new ArrayList<>(items.size());
+            for (Item item : items) {
+                uris.add(item.getContentUri());
+                paths.add(item.path);
+            }
+            spec.onSelectedListener.onSelected(uris, paths);
+        }
+    }
+
+    private static LongSparseArray<Item> toArray(Collection<Item> items) {
+        LongSparseArray<Item> array = new LongSparseArray<>(items.size());
+        for (Item item : items) {
+            array.put(item.id, item);
+        }
+        return array;
+    }
+
+    private static final class InstanceHolder {
+        private static final SelectionStream INSTANCE = new SelectionStream();
+    }
+}
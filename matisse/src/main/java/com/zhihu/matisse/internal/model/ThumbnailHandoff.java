@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.model;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+
+import androidx.annotation.Nullable;
+import androidx.collection.LruCache;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Copies of the grid thumbnails of the selected items, kept for the host after the picker returns so that it can
+ * show the selection without decoding it again. Kept in process until {@link #release()}.
+ */
+public final class ThumbnailHandoff {
+
+    private static final int MAX_BYTES = 16 * 1024 * 1024;
+
+    private final LruCache<Uri, Bitmap> mThumbnails = new LruCache<Uri, Bitmap>(MAX_BYTES) {
+        @Override
+        protected int sizeOf(Uri key, Bitmap value) {
+            return value.getByteCount();
+        }
+    };
+
+    private ThumbnailHandoff() {
+    }
+
+    public static ThumbnailHandoff getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    public boolean contains(Uri uri) {
+        return mThumbnails.get(uri) != null;
+    }
+
+    /**
+     * @param thumbnail a copy owned by this class from now on.
+     */
+    public void put(Uri uri, Bitmap thumbnail) {
+        mThumbnails.put(uri, thumbnail);
+    }
+
+    @Nullable
+    public Bitmap get(Uri uri) {
+        return mThumbnails.get(uri);
+    }
+
+    /**
+     * Keeps the thumbnail of {@code from} under {@code to}, e.g. the uri of a copy handed back instead.
+     */
+    public void rename(Uri from, Uri to) {
+        Bitmap thumbnail = mThumbnails.remove(from);
+        if (thumbnail != null) {
+            mThumbnails.put(to, thumbnail);
+        }
+    }
+
+    public void remove(Uri uri) {
+        mThumbnails.remove(uri);
+    }
+
+    /**
+     * Drops the thumbnails of anything but {@code uris}, e.g. of items selected then deselected in preview.
+     */
+    public void retain(List<Uri> uris) {
+        Set<Uri> kept = new HashSet<>(uris);
+        for (Map.Entry<Uri, Bitmap> entry : mThumbnails.snapshot().entrySet()) {
+            if (!kept.contains(entry.getKey())) {
+                mThumbnails.remove(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Drops all thumbnails. Not recycled, the host may still be showing them.
+     */
+    public void release() {
+        mThumbnails.evictAll();
+    }
+
+    private static final class InstanceHolder {
+        private static final ThumbnailHandoff INSTANCE = new ThumbnailHandoff();
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.model;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+import android.os.Looper;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.zhihu.matisse.internal.entity.Item;
+import com.zhihu.matisse.internal.entity.VideoInfo;
+import com.zhihu.matisse.internal.utils.DaemonThreadFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Duration, size, rotation and decodability of videos. Read from the media provider columns when it has a
+ * duration, probed with {@link MediaMetadataRetriever} otherwise, at most {@link #MAX_RETRIEVERS} at a time.
+ * Probed videos are remembered by id and date modified in a small file in the cache directory. Thread safe.
+ */
+public final class VideoProbe {
+
+    private static final String TAG = "VideoProbe";
+    private static final String CACHE_FILE = "matisse_video_probe";
+    private static final int CACHE_VERSION = 1;
+    private static final int MAX_ENTRIES = 512;
+    // native retrievers are heavy, don't let callers open more at once
+    private static final int MAX_RETRIEVERS = 2;
+
+    private final Semaphore mRetrievers = new Semaphore(MAX_RETRIEVERS);
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(new DaemonThreadFactory(TAG));
+    private final Map<Long, Entry> mEntries = new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private File mCacheFile;
+    private boolean mSaveScheduled;
+    private boolean mLoadScheduled;
+
+    private VideoProbe() {
+    }
+
+    public static VideoProbe getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * @return what is known of {@code item} without touching the file, null if it has to be probed. The
+     * remembered probes are read from disk first, on the main thread they are read in the background and
+     * show up in later calls.
+     */
+    @Nullable
+    public VideoInfo peek(Context context, Item item) {
+        VideoInfo info = VideoInfo.fromMediaStore(item);
+        if (info != null) {
+            return info;
+        }
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            loadAsync(context);
+        } else {
+            load(context);
+        }
+        synchronized (this) {
+            Entry entry = mEntries.get(item.id);
+            return entry != null && entry.mDateModified == item.dateModified ? entry.mInfo : null;
+        }
+    }
+
+    /**
+     * Probes {@code item} in the background unless it is known, so that {@link #probe(Context, Item)} is quick.
+     */
+    public void prefetch(final Context context, final Item item) {
+        if (VideoInfo.fromMediaStore(item) != null) {
+            return;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                probe(context, item);
+            }
+        });
+    }
+
+    @WorkerThread
+    public VideoInfo probe(Context context, Item item) {
+        VideoInfo info = VideoInfo.fromMediaStore(item);
+        if (info != null) {
+            return info;
+        }
+        info = peek(context, item);
+        if (info != null) {
+            return info;
+        }
+
+        info = retrieve(context, item.getContentUri());
+        if (info == null) {
+            // could not be opened this time, try again next time
+            return unreadable();
+        }
+        synchronized (this) {
+            mEntries.put(item.id, new Entry(item.dateModified, info));
+            scheduleSave();
+        }
+        return info;
+    }
+
+    /**
+     * Probes a file which is not in the media provider yet, e.g. one just captured. Not remembered.
+     */
+    @WorkerThread
+    public VideoInfo probe(Context context, File file) {
+        VideoInfo info = retrieve(context, Uri.fromFile(file));
+        return info != null ? info : unreadable();
+    }
+
+    /**
+     * Probes {@code file} in the background and writes its duration to {@code uri}, the row just inserted
+     * for it.
+     */
+    public void fillDuration(Context context, final File file, final Uri uri) {
+        final Context appContext = context.getApplicationContext();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                VideoInfo info = probe(appContext, file);
+                if (info.duration <= 0) {
+                    return;
+                }
+                ContentValues values = new ContentValues();
+                values.put(MediaStore.Video.Media.DURATION, info.duration);
+                try {
+                    appContext.getContentResolver().update(uri, values, null, null);
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Cannot fill in the duration of " + uri, e);
+                }
+            }
+        });
+    }
+
+    private static VideoInfo unreadable() {
+        return new VideoInfo(0, 0, 0, 0, false);
+    }
+
+    /**
+     * @return null if the file could not be opened, e.g. no permission or gone, as opposed to not decodable.
+     */
+    @Nullable
+    private VideoInfo retrieve(Context context, Uri uri) {
+        mRetrievers.acquireUninterruptibly();
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(context, uri);
+            long duration = parse(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION));
+            boolean hasVideo = "yes".equals(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_HAS_VIDEO));
+            return new VideoInfo(duration,
+                    (int) parse(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH)),
+                    (int) parse(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT)),
+                    (int) parse(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION)),
+                    hasVideo && duration > 0);
+        } catch (SecurityException | IllegalArgumentException e) {
+            // setDataSource could not open the uri
+            return null;
+        } catch (RuntimeException e) {
+            // not a video the platform can read
+            return unreadable();
+        } finally {
+            try {
+                retriever.release();
+            } catch (Exception e) {
+                // declared to throw IOException by newer SDKs, nothing left to free then
+                e.printStackTrace();
+            }
+            mRetrievers.release();
+        }
+    }
+
+    private static long parse(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void loadAsync(final Context context) {
+        synchronized (this) {
+            if (mCacheFile != null || mLoadScheduled) {
+                return;
+            }
+            mLoadScheduled = true;
+        }
+        final Context appContext = context.getApplicationContext();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                load(appContext);
+            }
+        });
+    }
+
+    /**
+     * Reads the remembered probes, outside of the lock so that {@link #peek(Context, Item)} never waits on the
+     * disk. Probes made meanwhile are newer and kept.
+     */
+    private void load(Context context) {
+        File file;
+        synchronized (this) {
+            if (mCacheFile != null) {
+                return;
+            }
+            file = mCacheFile = new File(context.getApplicationContext().getCacheDir(), CACHE_FILE);
+        }
+        if (!file.exists()) {
+            return;
+        }
+        Map<Long, Entry> read = new LinkedHashMap<>();
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != CACHE_VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long id = in.readLong();
+                long dateModified = in.readLong();
+                VideoInfo info = new VideoInfo(in.readLong(), in.readInt(), in.readInt(), in.readInt(),
+                        in.readBoolean());
+                read.put(id, new Entry(dateModified, info));
+            }
+        } catch (EOFException e) {
+            // cut short, keep what was read
+            Log.w(TAG, "Truncated cache");
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot read cache", e);
+        } finally {
+            closeQuietly(in);
+            synchronized (this) {
+                for (Map.Entry<Long, Entry> e : read.entrySet()) {
+                    if (!mEntries.containsKey(e.getKey())) {
+                        mEntries.put(e.getKey(), e.getValue());
+                    }
+                }
+            }
+        }
+    }
+
+    private void scheduleSave() {
+        if (mSaveScheduled) {
+            return;
+        }
+        mSaveScheduled = true;
+        // coalesces the probes of one Apply into one write
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                save();
+            }
+        });
+    }
+
+    private void save() {
+        List<Map.Entry<Long, Entry>> entries;
+        File file;
+        synchronized (this) {
+            mSaveScheduled = false;
+            entries = new ArrayList<>(mEntries.entrySet());
+            file = mCacheFile;
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            out.writeInt(CACHE_VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<Long, Entry> e : entries) {
+                VideoInfo info = e.getValue().mInfo;
+                out.writeLong(e.getKey());
+                out.writeLong(e.getValue().mDateModified);
+                out.writeLong(info.duration);
+                out.writeInt(info.width);
+                out.writeInt(info.height);
+                out.writeInt(info.rotation);
+                out.writeBoolean(info.decodable);
+            }
+            out.close();
+            out = null;
+            if (!temp.renameTo(file)) {
+                Log.w(TAG, "Cannot replace cache");
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot write cache", e);
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static final class Entry {
+        private final long mDateModified;
+        private final VideoInfo mInfo;
+
+        Entry(long dateModified, VideoInfo info) {
+            mDateModified = dateModified;
+            mInfo = info;
+        }
+    }
+
+    private static final class InstanceHolder {
+        private static final VideoProbe INSTANCE = new VideoProbe();
+    }
+}
@@ -30,6 +30,7 @@ import com.zhihu.matisse.R;
 import com.zhihu.matisse.internal.entity.IncapableCause;
 import com.zhihu.matisse.internal.entity.Item;
 import com.zhihu.matisse.internal.entity.SelectionSpec;
+import com.zhihu.matisse.internal.model.FilterEngine;
 import com.zhihu.matisse.internal.model.SelectedItemCollection;
 import com.zhihu.matisse.internal.ui.adapter.PreviewPagerAdapter;
 import com.zhihu.matisse.internal.ui.widget.CheckView;
@@ -110,14 +111,7 @@ public abstract class BasePreviewActivity extends AppCompatActivity implements V
                         mCheckView.setChecked(false);
                     }
                 } else {
-                    if (assertAddSelection(item)) {
-                        mSelectedCollection.add(item);
-                        if (mSpec.countable) {
-                            mCheckView.setCheckedNum(mSelectedCollection.checkedNumOf(item));
-                        } else {
-                            mCheckView.setChecked(true);
-                        }
-                    }
+                    addSelectionIfAcceptable(item);
                 }
                 updateApplyButton();
             }
@@ -217,9 +211,31 @@ public abstract class BasePreviewActivity extends AppCompatActivity implements V
         setResult(Activity.RESULT_OK, intent);
     }
 
-    private boolean assertAddSelection(Item item) {
-        IncapableCause cause = mSelectedCollection.isAcceptable(item);
-        IncapableCause.handleCause(this, cause);
-        return cause == null;
+    private void addSelectionIfAcceptable(Item item) {
+        mSelectedCollection.checkAcceptable(item, new FilterEngine.Callback() {
+            @Override
+            public void onVerdict(Item item, IncapableCause cause) {
+                if (isFinishing()) {
+                    return;
+                }
+                if (cause != null) {
+                    IncapableCause.handleCause(BasePreviewActivity.this, cause);
+                    return;
+                }
+                if (mSelectedCollection.isSelected(item)) {
+                    return;
+                }
+                mSelectedCollection.add(item);
+                // the user may have paged on while the item was checked
+                if (item.equals(mAdapter.getMediaItem(mPager.getCurrentItem()))) {
+                    if (mSpec.countable) {
+                        mCheckView.setCheckedNum(mSelectedCollection.checkedNumOf(item));
+                    } else {
+                        mCheckView.setChecked(true);
+                    }
+                }
+                updateApplyButton();
+            }
+        });
     }
 }
@@ -27,13 +27,18 @@ import android.view.View;
 import android.view.ViewGroup;
 
 import com.zhihu.matisse.R;
+import com.zhihu.matisse.SortOrder;
 import com.zhihu.matisse.internal.entity.Album;
 import com.zhihu.matisse.internal.entity.Item;
 import com.zhihu.matisse.internal.entity.SelectionSpec;
 import com.zhihu.matisse.internal.model.AlbumMediaCollection;
+import com.zhihu.matisse.internal.model.FilterEngine;
+import com.zhihu.matisse.internal.model.FormatCache;
 import com.zhihu.matisse.internal.model.SelectedItemCollection;
 import com.zhihu.matisse.internal.ui.adapter.AlbumMediaAdapter;
+import com.zhihu.matisse.internal.ui.adapter.MediaGridPool;
 import com.zhihu.matisse.internal.ui.widget.MediaGridInset;
+import com.zhihu.matisse.internal.ui.widget.SectionFastScroller;
 import com.zhihu.matisse.internal.utils.UIUtils;
 
 public class MediaSelectionFragment extends Fragment implements
@@ -41,6 +46,7 @@ public class MediaSelectionFragment extends Fragment implements
         AlbumMediaAdapter.OnMediaClickListener {
 
     public static final String EXTRA_ALBUM = "extra_album";
+    public static final String EXTRA_ENABLE_CAPTURE = "extra_enable_capture";
 
     private final AlbumMediaCollection mAlbumMediaCollection = new AlbumMediaCollection();
     private RecyclerView mRecyclerView;
@@ -51,9 +57,14 @@ public class MediaSelectionFragment extends Fragment implements
     private Album  mAlbum;
 
     public static MediaSelectionFragment newInstance(Album album) {
+        return newInstance(album, SelectionSpec.getInstance().capture);
+    }
+
+    public static MediaSelectionFragment newInstance(Album album, boolean enableCapture) {
         MediaSelectionFragment fragment = new MediaSelectionFragment();
         Bundle args = new Bundle();
         args.putParcelable(EXTRA_ALBUM, album);
+        args.putBoolean(EXTRA_ENABLE_CAPTURE, enableCapture);
         fragment.setArguments(args);
         return fragment;
     }
@@ -61,16 +72,18 @@ public class MediaSelectionFragment extends Fragment implements
     @Override
     public void onAttach(Context context) {
         super.onAttach(context);
-        if (context instanceof SelectionProvider) {
-            mSelectionProvider = (SelectionProvider) context;
+        // when embedded through MatisseFragment the parent fragment is the host, otherwise the Activity
+        Object host = getParentFragment() != null ? getParentFragment() : context;
+        if (host instanceof SelectionProvider) {
+            mSelectionProvider = (SelectionProvider) host;
         } else {
-            throw new IllegalStateException("Context must implement SelectionProvider.");
+            throw new IllegalStateException("Host must implement SelectionProvider.");
         }
-        if (context instanceof AlbumMediaAdapter.CheckStateListener) {
-            mCheckStateListener = (AlbumMediaAdapter.CheckStateListener) context;
+        if (host instanceof AlbumMediaAdapter.CheckStateListener) {
+            mCheckStateListener = (AlbumMediaAdapter.CheckStateListener) host;
         }
-        if (context instanceof AlbumMediaAdapter.OnMediaClickListener) {
-            mOnMediaClickListener = (AlbumMediaAdapter.OnMediaClickListener) context;
+        if (host instanceof AlbumMediaAdapter.OnMediaClickListener) {
+            mOnMediaClickListener = (AlbumMediaAdapter.OnMediaClickListener) host;
         }
     }
 
@@ -78,6 +91,10 @@ public class MediaSelectionFragment extends Fragment implements
     @Override
     public View onCreateView(LayoutInflater inflater, @Nullable ViewGroup container,
                              @Nullable Bundle savedInstanceState) {
+        if (container != null) {
+            // inherit the Matisse theme applied by the container, the host Activity may not carry it
+            inflater = inflater.cloneInContext(container.getContext());
+        }
         return inflater.inflate(R.layout.fragment_media_selection, container, false);
     }
 
@@ -92,7 +109,7 @@ public class MediaSelectionFragment extends Fragment implements
         super.onActivityCreated(savedInstanceState);
         mAlbum = getArguments().getParcelable(EXTRA_ALBUM);
 
-        mAdapter = new AlbumMediaAdapter(getContext(),
+        mAdapter = new AlbumMediaAdapter(mRecyclerView.getContext(),
                 mSelectionProvider.provideSelectedItemCollection(), mRecyclerView);
         mAdapter.registerCheckStateListener(this);
         mAdapter.registerOnMediaClickListener(this);
@@ -105,24 +122,68 @@ public class MediaSelectionFragment extends Fragment implements
         } else {
             spanCount = selectionSpec.spanCount;
         }
-        mRecyclerView.setLayoutManager(new GridLayoutManager(getContext(), spanCount));
+        GridLayoutManager layoutManager = new GridLayoutManager(getContext(), spanCount);
+        if (selectionSpec.showDateSections) {
+            final int spans = spanCount;
+            layoutManager.setSpanSizeLookup(new GridLayoutManager.SpanSizeLookup() {
+                @Override
+                public int getSpanSize(int position) {
+                    return mAdapter.isHeader(position) ? spans : 1;
+                }
+
+                @Override
+                public int getSpanIndex(int position, int spanCount) {
+                    // answered from the month index, the default walks every position above
+                    return mAdapter.getSpanIndex(position, spanCount);
+                }
+            });
+        }
+        // hand the cells back to the shared pool when this grid goes away on album switch
+        layoutManager.setRecycleChildrenOnDetach(true);
+        mRecyclerView.setLayoutManager(layoutManager);
+        // one row above and one below the viewport bind without going through the pool
+        mRecyclerView.setItemViewCacheSize(spanCount * 2);
+
+        MediaGridPool pool = mSelectionProvider.provideMediaGridPool();
+        mRecyclerView.setRecycledViewPool(pool);
 
         int spacing = getResources().getDimensionPixelSize(R.dimen.media_grid_spacing);
         mRecyclerView.addItemDecoration(new MediaGridInset(spanCount, spacing, false));
         mRecyclerView.setAdapter(mAdapter);
-        mAlbumMediaCollection.onCreate(getActivity(), this);
-        mAlbumMediaCollection.load(mAlbum, selectionSpec.capture);
+        FormatCache.getInstance().addOnFormatsChangedListener(mAdapter);
+        FilterEngine.getInstance().addOnVerdictListener(mAdapter);
+        if (selectionSpec.showDateSections) {
+            new SectionFastScroller(mRecyclerView, mAdapter);
+        }
+        mAlbumMediaCollection.onCreate(this, this);
+        mAlbumMediaCollection.load(mAlbum, isCaptureEnabled(), selectionSpec.showDateSections);
+        // inflate the first screen of cells while the query runs
+        pool.prefill(mRecyclerView, mAdapter, spanCount);
+    }
+
+    /**
+     * Shows the album in {@code order}, recently used orders come back from the loader cache.
+     */
+    public void setSortOrder(SortOrder order) {
+        mAlbumMediaCollection.load(mAlbum, isCaptureEnabled(), SelectionSpec.getInstance().showDateSections, order);
+        mRecyclerView.scrollToPosition(0);
     }
 
     public void refresh(){
-        SelectionSpec selectionSpec = SelectionSpec.getInstance();
-        mAlbumMediaCollection.load(mAlbum, selectionSpec.capture);
+        mAlbumMediaCollection.load(mAlbum, isCaptureEnabled(), SelectionSpec.getInstance().showDateSections);
+    }
+
+    private boolean isCaptureEnabled() {
+        return getArguments().getBoolean(EXTRA_ENABLE_CAPTURE, SelectionSpec.getInstance().capture);
     }
 
     @Override
     public void onDestroyView() {
         super.onDestroyView();
         mAlbumMediaCollection.onDestroy();
+        FormatCache.getInstance().removeOnFormatsChangedListener(mAdapter);
+        FilterEngine.getInstance().removeOnVerdictListener(mAdapter);
+        mAdapter.cancelPrefetch();
     }
 
     public void refreshMediaGrid() {
@@ -133,6 +194,10 @@ public class MediaSelectionFragment extends Fragment implements
         mAdapter.refreshSelection();
     }
 
+    public void handOffThumbnails() {
+        mAdapter.handOffThumbnails();
+    }
+
     @Override
     public void onAlbumMediaLoad(Cursor cursor) {
         mAdapter.swapCursor(cursor);
@@ -162,5 +227,10 @@ public class MediaSelectionFragment extends Fragment implements
 
     public interface SelectionProvider {
         SelectedItemCollection provideSelectedItemCollection();
+
+        /**
+         * @return a pool living as long as the host, shared by the grids of all albums.
+         */
+        MediaGridPool provideMediaGridPool();
     }
 }
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.ui;
+
+import android.content.Intent;
+import android.view.MenuItem;
+
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+import androidx.fragment.app.FragmentManager;
+
+import com.zhihu.matisse.SortOrder;
+import com.zhihu.matisse.internal.entity.SelectionSpec;
+import com.zhihu.matisse.internal.model.ProcessingPipeline;
+import com.zhihu.matisse.internal.model.ResultAssembler;
+import com.zhihu.matisse.internal.ui.widget.SortOrderMenu;
+import com.zhihu.matisse.ui.MatisseActivity;
+
+/**
+ * What {@link MatisseActivity} and {@link com.zhihu.matisse.ui.MatisseFragment} share around the grid.
+ */
+public final class PickerHelper {
+
+    private PickerHelper() {
+    }
+
+    @Nullable
+    public static MediaSelectionFragment findMediaSelection(FragmentManager fragmentManager) {
+        Fragment fragment = fragmentManager.findFragmentByTag(MediaSelectionFragment.class.getSimpleName());
+        return fragment instanceof MediaSelectionFragment ? (MediaSelectionFragment) fragment : null;
+    }
+
+    /**
+     * Switches the grid in {@code fragmentManager} to the order {@code item} stands for.
+     *
+     * @return false if {@code item} is not a sort order item.
+     */
+    public static boolean onSortItemSelected(MenuItem item, FragmentManager fragmentManager) {
+        SortOrder order = SortOrderMenu.orderOf(item);
+        if (order == null) {
+            return false;
+        }
+        item.setChecked(true);
+        SelectionSpec spec = SelectionSpec.getInstance();
+        if (order != spec.sortOrder) {
+            spec.sortOrder = order;
+            MediaSelectionFragment mediaSelectionFragment = findMediaSelection(fragmentManager);
+            if (mediaSelectionFragment != null) {
+                mediaSelectionFragment.setSortOrder(order);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Builds the result for {@code assembled} and hands the processed outputs over to the caller.
+     *
+     * @param validate whether the removed count was worked out and goes into the result.
+     */
+    public static Intent resultOf(ResultAssembler.Result assembled, boolean originalEnable, boolean validate) {
+        Intent result = new Intent();
+        result.putParcelableArrayListExtra(MatisseActivity.EXTRA_RESULT_SELECTION, assembled.uris);
+        result.putStringArrayListExtra(MatisseActivity.EXTRA_RESULT_SELECTION_PATH, assembled.paths);
+        result.putParcelableArrayListExtra(MatisseActivity.EXTRA_RESULT_SELECTION_ITEMS, assembled.items);
+        result.putStringArrayListExtra(MatisseActivity.EXTRA_RESULT_PROCESSED_PATH, assembled.processedPaths);
+        result.putExtra(MatisseActivity.EXTRA_RESULT_ORIGINAL_ENABLE, originalEnable);
+        if (SelectionSpec.getInstance().computeDigests) {
+            result.putStringArrayListExtra(MatisseActivity.EXTRA_RESULT_DIGESTS, assembled.digests);
+        }
+        if (validate) {
+            result.putExtra(MatisseActivity.EXTRA_RESULT_DELETED_ITEM_COUNT, assembled.removedCount);
+        }
+        if (SelectionSpec.getInstance().stripMetadata) {
+            result.putExtra(MatisseActivity.EXTRA_RESULT_UNSTRIPPED_ITEM_COUNT, assembled.unstrippedCount);
+        }
+        ProcessingPipeline.getInstance().handOver();
+        return result;
+    }
+}
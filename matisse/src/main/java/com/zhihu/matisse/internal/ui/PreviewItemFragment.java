@@ -81,7 +81,7 @@ public class PreviewItemFragment extends Fragment {
         ImageViewTouch image = (ImageViewTouch) view.findViewById(R.id.image_view);
         image.setDisplayType(ImageViewTouchBase.DisplayType.FIT_TO_SCREEN);
 
-        Point size = PhotoMetadataUtils.getBitmapSize(item.getContentUri(), getActivity());
+        Point size = PhotoMetadataUtils.getBitmapSize(item, getActivity());
         if (item.isGif()) {
             SelectionSpec.getInstance().imageEngine.loadGifImage(getContext(), size.x, size.y, image,
                     item.getContentUri());
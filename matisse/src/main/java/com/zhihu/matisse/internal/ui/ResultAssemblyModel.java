@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.ui;
+
+import android.content.Context;
+
+import androidx.lifecycle.ViewModel;
+
+import com.zhihu.matisse.internal.entity.Item;
+import com.zhihu.matisse.internal.model.ResultAssembler;
+
+import java.util.List;
+
+/**
+ * Keeps a {@link ResultAssembler} running across configuration changes of the picker host. The host attaches
+ * its callback when created and detaches it when destroyed, a result assembled in between is held until the
+ * next host attaches. The assembly is cancelled only when the host is gone for good.
+ */
+public class ResultAssemblyModel extends ViewModel implements ResultAssembler.Callback {
+
+    private ResultAssembler mAssembler;
+    private ResultAssembler.Callback mCallback;
+    private ResultAssembler.Result mPending;
+    private boolean mValidate;
+    private int mDone;
+    private int mTotal;
+
+    public void start(Context context, List<Item> items, boolean validate, boolean original) {
+        mValidate = validate;
+        mDone = 0;
+        mTotal = items.size();
+        mPending = null;
+        mAssembler = new ResultAssembler(context, items, validate, original, this);
+        mAssembler.start();
+    }
+
+    public boolean isRunning() {
+        return mAssembler != null && mAssembler.isRunning();
+    }
+
+    /**
+     * @return whether the running or last assembly validates the items.
+     */
+    public boolean isValidating() {
+        return mValidate;
+    }
+
+    /**
+     * Reports the progress so far and a result assembled while no host was attached to {@code callback}.
+     */
+    public void attach(ResultAssembler.Callback callback) {
+        mCallback = callback;
+        if (isRunning() && mDone > 0) {
+            callback.onProgress(mDone, mTotal);
+        }
+        if (mPending != null) {
+            ResultAssembler.Result pending = mPending;
+            mPending = null;
+            callback.onAssembled(pending);
+        }
+    }
+
+    public void detach() {
+        mCallback = null;
+    }
+
+    public void cancel() {
+        if (mAssembler != null) {
+            mAssembler.cancel();
+            mAssembler = null;
+        }
+        mPending = null;
+    }
+
+    @Override
+    public void onProgress(int done, int total) {
+        mDone = done;
+        mTotal = total;
+        if (mCallback != null) {
+            mCallback.onProgress(done, total);
+        }
+    }
+
+    @Override
+    public void onAssembled(ResultAssembler.Result result) {
+        mAssembler = null;
+        if (mCallback != null) {
+            mCallback.onAssembled(result);
+        } else {
+            mPending = result;
+        }
+    }
+
+    @Override
+    protected void onCleared() {
+        cancel();
+    }
+}
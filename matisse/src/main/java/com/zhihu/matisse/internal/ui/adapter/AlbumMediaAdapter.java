@@ -18,14 +18,18 @@ package com.zhihu.matisse.internal.ui.adapter;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.database.Cursor;
+import android.graphics.Bitmap;
 import android.graphics.PorterDuff;
 import android.graphics.drawable.Drawable;
+import android.provider.MediaStore;
+import androidx.core.view.ViewCompat;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
+import android.widget.SectionIndexer;
 import android.widget.TextView;
 
 import com.zhihu.matisse.R;
@@ -33,23 +37,48 @@ import com.zhihu.matisse.internal.entity.Album;
 import com.zhihu.matisse.internal.entity.Item;
 import com.zhihu.matisse.internal.entity.SelectionSpec;
 import com.zhihu.matisse.internal.entity.IncapableCause;
+import com.zhihu.matisse.internal.loader.SectionedCursor;
+import com.zhihu.matisse.internal.model.FilterEngine;
+import com.zhihu.matisse.internal.model.FormatCache;
 import com.zhihu.matisse.internal.model.SelectedItemCollection;
+import com.zhihu.matisse.internal.model.ThumbnailHandoff;
 import com.zhihu.matisse.internal.ui.widget.CheckView;
 import com.zhihu.matisse.internal.ui.widget.MediaGrid;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class AlbumMediaAdapter extends
         RecyclerViewCursorAdapter<RecyclerView.ViewHolder> implements
-        MediaGrid.OnMediaGridClickListener {
+        MediaGrid.OnMediaGridClickListener, SectionIndexer, FormatCache.OnFormatsChangedListener,
+        FilterEngine.Callback {
 
     private static final int VIEW_TYPE_CAPTURE = 0x01;
-    private static final int VIEW_TYPE_MEDIA = 0x02;
+    static final int VIEW_TYPE_MEDIA = 0x02;
+    private static final int VIEW_TYPE_HEADER = 0x03;
+    private static final Object[] NO_SECTIONS = new Object[0];
+    // checks ahead of a tap wait for the grid to settle, so the thumbnails of the new rows decode first
+    private static final long PREFETCH_DELAY_MS = 300;
+    private static final int PREFETCH_ROWS = 2;
+    // rebinds only the check of a cell, the thumbnail stays
+    private static final Object PAYLOAD_CHECK_STATE = new Object();
     private final SelectedItemCollection mSelectedCollection;
     private final Drawable mPlaceholder;
+    private final Runnable mPrefetch = new Runnable() {
+        @Override
+        public void run() {
+            prefetchVisible();
+        }
+    };
     private SelectionSpec mSelectionSpec;
     private CheckStateListener mCheckStateListener;
     private OnMediaClickListener mOnMediaClickListener;
     private RecyclerView mRecyclerView;
     private int mImageResize;
+    // month headers are interleaved with the cursor rows when the cursor is sectioned
+    private SectionedCursor mSections;
+    // a cell inflated ahead by MediaGridPool, taken by the next media ViewHolder created
+    private View mPreInflated;
 
     public AlbumMediaAdapter(Context context, SelectedItemCollection selectedCollection, RecyclerView recyclerView) {
         super(null);
@@ -61,6 +90,50 @@ public class AlbumMediaAdapter extends
         ta.recycle();
 
         mRecyclerView = recyclerView;
+        mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    schedulePrefetch();
+                } else {
+                    cancelPrefetch();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onFormatsChanged() {
+        // rare, only files whose content disagrees with their name
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public void onVerdict(Item item, IncapableCause cause) {
+        if (cause == null) {
+            return;
+        }
+        // grey out the cell if it is on screen, the others pick the verdict up when bound
+        for (int i = 0; i < mRecyclerView.getChildCount(); i++) {
+            View child = mRecyclerView.getChildAt(i);
+            if (child instanceof MediaGrid && ((MediaGrid) child).getMedia() != null
+                    && ((MediaGrid) child).getMedia().id == item.id) {
+                setCheckStatus(((MediaGrid) child).getMedia(), (MediaGrid) child);
+            }
+        }
+    }
+
+    /**
+     * Creates a media ViewHolder around a cell already inflated from {@code R.layout.media_grid_item}. Main
+     * thread only, like every other ViewHolder creation.
+     */
+    RecyclerView.ViewHolder createMediaViewHolder(ViewGroup parent, View inflated) {
+        mPreInflated = inflated;
+        try {
+            return createViewHolder(parent, VIEW_TYPE_MEDIA);
+        } finally {
+            mPreInflated = null;
+        }
     }
 
     @Override
@@ -78,12 +151,36 @@ public class AlbumMediaAdapter extends
             });
             return holder;
         } else if (viewType == VIEW_TYPE_MEDIA) {
-            View v = LayoutInflater.from(parent.getContext()).inflate(R.layout.media_grid_item, parent, false);
+            View v = mPreInflated != null ? mPreInflated
+                    : LayoutInflater.from(parent.getContext()).inflate(R.layout.media_grid_item, parent, false);
             return new MediaViewHolder(v);
+        } else if (viewType == VIEW_TYPE_HEADER) {
+            View v = LayoutInflater.from(parent.getContext()).inflate(R.layout.media_grid_header, parent, false);
+            return new HeaderViewHolder(v);
         }
         return null;
     }
 
+    @Override
+    public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+        if (holder instanceof HeaderViewHolder) {
+            ((HeaderViewHolder) holder).mLabel.setText(mSections.getSectionLabels()[sectionAt(position)]);
+        } else {
+            super.onBindViewHolder(holder, cursorPosition(position));
+        }
+    }
+
+    @Override
+    public void onBindViewHolder(RecyclerView.ViewHolder holder, int position, List<Object> payloads) {
+        if (holder instanceof MediaViewHolder && payloads.contains(PAYLOAD_CHECK_STATE)
+                && ((MediaViewHolder) holder).mMediaGrid.getMedia() != null) {
+            MediaGrid mediaGrid = ((MediaViewHolder) holder).mMediaGrid;
+            setCheckStatus(mediaGrid.getMedia(), mediaGrid);
+        } else {
+            onBindViewHolder(holder, position);
+        }
+    }
+
     @Override
     protected void onBindViewHolder(final RecyclerView.ViewHolder holder, Cursor cursor) {
         if (holder instanceof CaptureViewHolder) {
@@ -112,7 +209,8 @@ public class AlbumMediaAdapter extends
         } else if (holder instanceof MediaViewHolder) {
             MediaViewHolder mediaViewHolder = (MediaViewHolder) holder;
 
-            final Item item = Item.valueOf(cursor);
+            final Item item = FormatCache.getInstance().resolve(
+                    mediaViewHolder.mMediaGrid.getContext(), Item.valueOf(cursor));
             mediaViewHolder.mMediaGrid.preBindMedia(new MediaGrid.PreBindInfo(
                     getImageResize(mediaViewHolder.mMediaGrid.getContext()),
                     mPlaceholder,
@@ -132,6 +230,8 @@ public class AlbumMediaAdapter extends
         }
 
         mediaGrid.setCheckVisible(true);
+        mediaGrid.setCheckEnabled(true);
+        mediaGrid.setPending(FilterEngine.getInstance().isPending(item));
         if (mSelectionSpec.countable) {
             int checkedNum = mSelectedCollection.checkedNumOf(item);
             if (checkedNum > 0) {
@@ -165,6 +265,10 @@ public class AlbumMediaAdapter extends
                 }
             }
         }
+        if (FilterEngine.getInstance().isRejected(item)) {
+            // a tap still tells why
+            mediaGrid.setCheckEnabled(false);
+        }
     }
 
     @Override
@@ -174,56 +278,260 @@ public class AlbumMediaAdapter extends
                 mOnMediaClickListener.onMediaClick(null, item, holder.getAdapterPosition(), this);
             }
         } else {
-            updateSelectedItem(item, holder.itemView.getContext());
+            updateSelectedItem(item, holder.itemView.getContext(), holder.getAdapterPosition());
         }
     }
 
     @Override
-    public void onCheckViewClicked(CheckView checkView, Item item, RecyclerView.ViewHolder holder) {
-        updateSelectedItem(item, holder.itemView.getContext());
+    public void onCheckViewClicked(View checkView, Item item, RecyclerView.ViewHolder holder) {
+        updateSelectedItem(item, holder.itemView.getContext(), holder.getAdapterPosition());
     }
 
     public void updateSelectedItem(Item item, Context context) {
+        updateSelectedItem(item, context, RecyclerView.NO_POSITION);
+    }
+
+    /**
+     * @param position of {@code item} in the grid, {@link RecyclerView#NO_POSITION} if not known.
+     */
+    private void updateSelectedItem(Item item, Context context, int position) {
         if (mSelectionSpec.countable) {
             int checkedNum = mSelectedCollection.checkedNumOf(item);
             if (checkedNum == CheckView.UNCHECKED) {
-                if (assertAddSelection(context, item)) {
-                    mSelectedCollection.add(item);
-                    notifyCheckStateChanged(item);
-                }
+                addSelectionIfAcceptable(context, item, position);
             } else {
                 mSelectedCollection.remove(item);
-                notifyCheckStateChanged(item);
+                ThumbnailHandoff.getInstance().remove(item.getContentUri());
+                // the items checked after it move up by one
+                notifyCheckStateChanged(item, RecyclerView.NO_POSITION);
             }
         } else {
             if (mSelectedCollection.isSelected(item)) {
                 mSelectedCollection.remove(item);
-                notifyCheckStateChanged(item);
+                ThumbnailHandoff.getInstance().remove(item.getContentUri());
+                notifyCheckStateChanged(item, position);
             } else {
-                if (assertAddSelection(context, item)) {
-                    mSelectedCollection.add(item);
-                    notifyCheckStateChanged(item);
-                }
+                addSelectionIfAcceptable(context, item, position);
             }
         }
     }
 
-    private void notifyCheckStateChanged(Item item) {
-        notifyDataSetChanged();
+    private void notifyCheckStateChanged(Item item, int position) {
+        refreshCheckState(position);
         if (mCheckStateListener != null) {
             mCheckStateListener.onUpdate(item);
         }
     }
 
+    /**
+     * Rebinds the check of the cell at {@code position}, of every cell for {@link RecyclerView#NO_POSITION}.
+     */
+    private void refreshCheckState(int position) {
+        if (position == RecyclerView.NO_POSITION) {
+            notifyItemRangeChanged(0, getItemCount(), PAYLOAD_CHECK_STATE);
+        } else {
+            notifyItemChanged(position, PAYLOAD_CHECK_STATE);
+        }
+    }
+
     @Override
     public int getItemViewType(int position, Cursor cursor) {
-        return Item.valueOf(cursor).isCapture() ? VIEW_TYPE_CAPTURE : VIEW_TYPE_MEDIA;
+        long id = cursor.getLong(cursor.getColumnIndex(MediaStore.Files.FileColumns._ID));
+        return id == Item.ITEM_ID_CAPTURE ? VIEW_TYPE_CAPTURE : VIEW_TYPE_MEDIA;
     }
 
-    private boolean assertAddSelection(Context context, Item item) {
-        IncapableCause cause = mSelectedCollection.isAcceptable(item);
-        IncapableCause.handleCause(context, cause);
-        return cause == null;
+    @Override
+    public int getItemViewType(int position) {
+        return isHeader(position) ? VIEW_TYPE_HEADER : super.getItemViewType(cursorPosition(position));
+    }
+
+    @Override
+    public int getItemCount() {
+        int count = super.getItemCount();
+        return mSections == null || count == 0 ? count : count + mSections.getSectionCount();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        if (isHeader(position)) {
+            return Long.MIN_VALUE + sectionAt(position);
+        }
+        return super.getItemId(cursorPosition(position));
+    }
+
+    @Override
+    public void swapCursor(Cursor newCursor) {
+        if (newCursor == null) {
+            super.swapCursor(null);
+            mSections = null;
+            return;
+        }
+        mSections = newCursor instanceof SectionedCursor && ((SectionedCursor) newCursor).getSectionCount() > 0
+                ? (SectionedCursor) newCursor : null;
+        super.swapCursor(newCursor);
+        schedulePrefetch();
+    }
+
+    public boolean isHeader(int position) {
+        if (mSections == null) {
+            return false;
+        }
+        int section = sectionAt(position);
+        return section != -1 && headerPosition(section) == position;
+    }
+
+    /**
+     * Column of the cell at {@code position}, counted from the first cell after its month header.
+     */
+    public int getSpanIndex(int position, int spanCount) {
+        if (mSections == null) {
+            return position % spanCount;
+        }
+        int section = sectionAt(position);
+        if (section == -1) {
+            return position % spanCount;
+        }
+        int header = headerPosition(section);
+        return header == position ? 0 : (position - header - 1) % spanCount;
+    }
+
+    @Override
+    public Object[] getSections() {
+        return mSections == null ? NO_SECTIONS : mSections.getSectionLabels();
+    }
+
+    @Override
+    public int getPositionForSection(int sectionIndex) {
+        return headerPosition(sectionIndex);
+    }
+
+    @Override
+    public int getSectionForPosition(int position) {
+        return mSections == null ? 0 : Math.max(sectionAt(position), 0);
+    }
+
+    private int headerPosition(int section) {
+        return mSections.getSectionStart(section) + section;
+    }
+
+    /**
+     * @return section whose header is at or above {@code position}, -1 for rows above the first header.
+     */
+    private int sectionAt(int position) {
+        int low = 0;
+        int high = mSections.getSectionCount() - 1;
+        int section = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (headerPosition(mid) <= position) {
+                section = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return section;
+    }
+
+    private int cursorPosition(int position) {
+        return mSections == null ? position : position - sectionAt(position) - 1;
+    }
+
+    /**
+     * Selects {@code item} once its checks pass, the cell shows them pending meanwhile.
+     */
+    private void addSelectionIfAcceptable(final Context context, Item item, final int position) {
+        mSelectedCollection.checkAcceptable(item, new FilterEngine.Callback() {
+            @Override
+            public void onVerdict(Item item, IncapableCause cause) {
+                if (!ViewCompat.isAttachedToWindow(mRecyclerView)) {
+                    // the grid went away while waiting
+                    return;
+                }
+                if (cause != null) {
+                    IncapableCause.handleCause(context, cause);
+                    refreshCheckState(position);
+                } else if (!mSelectedCollection.isSelected(item)) {
+                    mSelectedCollection.add(item);
+                    handOffThumbnails();
+                    notifyCheckStateChanged(item, position);
+                } else {
+                    refreshCheckState(position);
+                }
+            }
+        });
+        if (FilterEngine.getInstance().isPending(item)) {
+            refreshCheckState(position);
+        }
+    }
+
+    private void schedulePrefetch() {
+        mRecyclerView.removeCallbacks(mPrefetch);
+        if (mSelectionSpec.allowsMultipleSelection) {
+            mRecyclerView.postDelayed(mPrefetch, PREFETCH_DELAY_MS);
+        }
+    }
+
+    /**
+     * Stops checking cells ahead of a tap until the grid is idle again.
+     */
+    public void cancelPrefetch() {
+        mRecyclerView.removeCallbacks(mPrefetch);
+        FilterEngine.getInstance().cancelPrefetch();
+    }
+
+    /**
+     * Checks the visible cells and a few rows around them, the ones scrolled away are dropped.
+     */
+    private void prefetchVisible() {
+        GridLayoutManager layoutManager = (GridLayoutManager) mRecyclerView.getLayoutManager();
+        Cursor cursor = getCursor();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (cursor == null || cursor.isClosed() || first == -1 || last == -1) {
+            return;
+        }
+        int around = layoutManager.getSpanCount() * PREFETCH_ROWS;
+        int end = Math.min(last + around, getItemCount() - 1);
+        List<Item> items = new ArrayList<>(end - first + 1 + around);
+        // visible cells first
+        addItems(cursor, first, last, items);
+        addItems(cursor, last + 1, end, items);
+        addItems(cursor, Math.max(first - around, 0), first - 1, items);
+        FilterEngine.getInstance().prefetch(mRecyclerView.getContext(), items);
+    }
+
+    private void addItems(Cursor cursor, int from, int to, List<Item> items) {
+        Context context = mRecyclerView.getContext();
+        for (int i = from; i <= to; i++) {
+            if (!isHeader(i) && cursor.moveToPosition(cursorPosition(i))) {
+                // the sniffed type, as bound, so that the verdict is the one a tap would get
+                Item item = FormatCache.getInstance().resolve(context, Item.valueOf(cursor));
+                if (!item.isCapture()) {
+                    items.add(item);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the thumbnails of the selected cells on screen for the host, see {@link ThumbnailHandoff}.
+     */
+    public void handOffThumbnails() {
+        ThumbnailHandoff handoff = ThumbnailHandoff.getInstance();
+        for (int i = 0; i < mRecyclerView.getChildCount(); i++) {
+            View child = mRecyclerView.getChildAt(i);
+            if (!(child instanceof MediaGrid)) {
+                continue;
+            }
+            Item item = ((MediaGrid) child).getMedia();
+            if (item != null && mSelectedCollection.isSelected(item) && !handoff.contains(item.getContentUri())) {
+                Bitmap thumbnail = ((MediaGrid) child).copyThumbnail();
+                if (thumbnail != null) {
+                    handoff.put(item.getContentUri(), thumbnail);
+                }
+            }
+        }
     }
 
     public void registerCheckStateListener(CheckStateListener listener) {
@@ -251,9 +559,9 @@ public class AlbumMediaAdapter extends
         }
         Cursor cursor = getCursor();
         for (int i = first; i <= last; i++) {
-            RecyclerView.ViewHolder holder = mRecyclerView.findViewHolderForAdapterPosition(first);
+            RecyclerView.ViewHolder holder = mRecyclerView.findViewHolderForAdapterPosition(i);
             if (holder instanceof MediaViewHolder) {
-                if (cursor.moveToPosition(i)) {
+                if (cursor.moveToPosition(cursorPosition(i))) {
                     setCheckStatus(Item.valueOf(cursor), ((MediaViewHolder) holder).mMediaGrid);
                 }
             }
@@ -295,6 +603,16 @@ public class AlbumMediaAdapter extends
         }
     }
 
+    private static class HeaderViewHolder extends RecyclerView.ViewHolder {
+
+        private TextView mLabel;
+
+        HeaderViewHolder(View itemView) {
+            super(itemView);
+            mLabel = (TextView) itemView;
+        }
+    }
+
     private static class CaptureViewHolder extends RecyclerView.ViewHolder {
 
         private TextView mHint;
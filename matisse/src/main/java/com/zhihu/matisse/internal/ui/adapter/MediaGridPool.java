@@ -0,0 +1,109 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.ui.adapter;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.DisplayMetrics;
+import android.view.LayoutInflater;
+import android.view.View;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.zhihu.matisse.R;
+import com.zhihu.matisse.internal.utils.DaemonThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A {@link RecyclerView.RecycledViewPool} owned by the picker host and shared by every
+ * {@link com.zhihu.matisse.internal.ui.MediaSelectionFragment}, so grid cells survive album switches.
+ * {@link #prefill(RecyclerView, AlbumMediaAdapter, int)} inflates the first screen of cells on a background
+ * thread while the media query is running, their ViewHolders are created back on the main thread.
+ */
+public class MediaGridPool extends RecyclerView.RecycledViewPool {
+
+    // rows kept beyond the visible ones, one above and one below while scrolling
+    private static final int EXTRA_ROWS = 2;
+
+    private static final ExecutorService sInflater =
+            Executors.newSingleThreadExecutor(new DaemonThreadFactory("GridInflater"));
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private int mPending;
+
+    /**
+     * @return number of cells needed to fill one screen of a grid with {@code spanCount} columns.
+     */
+    public static int screenCapacity(RecyclerView recyclerView, int spanCount) {
+        DisplayMetrics metrics = recyclerView.getResources().getDisplayMetrics();
+        int spacing = recyclerView.getResources().getDimensionPixelSize(R.dimen.media_grid_spacing);
+        int cellSize = Math.max(1, (metrics.widthPixels - spacing * (spanCount - 1)) / spanCount);
+        int rows = (metrics.heightPixels + cellSize - 1) / cellSize;
+        return spanCount * rows;
+    }
+
+    /**
+     * Inflates grid cells off the main thread until the pool holds one screen plus {@link #EXTRA_ROWS}. Must be
+     * called after {@code adapter} is set on {@code recyclerView}, otherwise attaching the adapter clears the
+     * pool.
+     */
+    public void prefill(final RecyclerView recyclerView, final AlbumMediaAdapter adapter, int spanCount) {
+        final int capacity = screenCapacity(recyclerView, spanCount) + spanCount * EXTRA_ROWS;
+        setMaxRecycledViews(AlbumMediaAdapter.VIEW_TYPE_MEDIA, capacity);
+
+        final int missing = capacity - getRecycledViewCount(AlbumMediaAdapter.VIEW_TYPE_MEDIA) - mPending;
+        if (missing <= 0) {
+            return;
+        }
+        mPending += missing;
+        final LayoutInflater inflater = LayoutInflater.from(recyclerView.getContext());
+        sInflater.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < missing; i++) {
+                    final View view;
+                    try {
+                        // inflation only reads the parent for layout params, no view is attached here
+                        view = inflater.inflate(R.layout.media_grid_item, recyclerView, false);
+                    } catch (RuntimeException e) {
+                        // let the RecyclerView inflate the rest on demand
+                        postSettled(missing - i);
+                        return;
+                    }
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            mPending--;
+                            // the adapter may be gone with its grid, the cell is still good for the next one
+                            putRecycledView(adapter.createMediaViewHolder(recyclerView, view));
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    private void postSettled(final int count) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mPending -= count;
+            }
+        });
+    }
+}
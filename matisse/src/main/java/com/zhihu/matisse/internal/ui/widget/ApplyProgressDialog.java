@@ -0,0 +1,81 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.ui.widget;
+
+import android.content.Context;
+import android.content.DialogInterface;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.LayoutInflater;
+import android.widget.ProgressBar;
+
+import androidx.appcompat.app.AlertDialog;
+
+import com.zhihu.matisse.R;
+
+/**
+ * Progress of the selection being prepared after Apply, only shown if that takes a noticeable time.
+ */
+public class ApplyProgressDialog {
+
+    private static final long SHOW_DELAY_MS = 300;
+
+    private final AlertDialog mDialog;
+    private final ProgressBar mProgressBar;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mShow = new Runnable() {
+        @Override
+        public void run() {
+            mDialog.show();
+        }
+    };
+
+    public ApplyProgressDialog(Context context, final Runnable onCancel) {
+        mProgressBar = (ProgressBar) LayoutInflater.from(context).inflate(R.layout.dialog_apply_progress, null);
+        mDialog = new AlertDialog.Builder(context)
+                .setTitle(R.string.apply_progress)
+                .setView(mProgressBar)
+                .setNegativeButton(android.R.string.cancel, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        dialog.cancel();
+                    }
+                })
+                .setOnCancelListener(new DialogInterface.OnCancelListener() {
+                    @Override
+                    public void onCancel(DialogInterface dialog) {
+                        onCancel.run();
+                    }
+                })
+                .create();
+    }
+
+    public void show() {
+        mHandler.postDelayed(mShow, SHOW_DELAY_MS);
+    }
+
+    public void setProgress(int done, int total) {
+        mProgressBar.setMax(total);
+        mProgressBar.setProgress(done);
+    }
+
+    public void dismiss() {
+        mHandler.removeCallbacks(mShow);
+        if (mDialog.isShowing()) {
+            mDialog.dismiss();
+        }
+    }
+}
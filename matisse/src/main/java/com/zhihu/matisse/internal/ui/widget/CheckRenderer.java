@@ -0,0 +1,205 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.ui.widget;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.RadialGradient;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Shader;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
+import android.text.TextPaint;
+
+import androidx.core.content.res.ResourcesCompat;
+
+import com.zhihu.matisse.R;
+
+/**
+ * Paints the check circle of {@link CheckView} and {@link MediaGrid} into a 48dp x 48dp square whose
+ * top-left corner is the canvas origin. All paints and number labels are created once, drawing allocates
+ * nothing.
+ */
+final class CheckRenderer {
+
+    static final int SIZE = 48; // dp
+    private static final float STROKE_WIDTH = 3.0f; // dp
+    private static final float SHADOW_WIDTH = 6.0f; // dp
+    private static final float STROKE_RADIUS = 11.5f; // dp
+    private static final float BG_RADIUS = 11.0f; // dp
+    private static final int CONTENT_SIZE = 16; // dp
+    private static final int CACHED_NUMBERS = 100;
+    private static final long PENDING_PERIOD = 1000; // ms per turn of the pending arc
+    private static final float PENDING_SWEEP = 90f;
+
+    private final float mDensity;
+    private final float mCenter;
+    private final Paint mStrokePaint;
+    private final Paint mBackgroundPaint;
+    private final TextPaint mTextPaint;
+    private final Paint mShadowPaint;
+    private final Paint mPendingPaint;
+    private final RectF mPendingBounds;
+    private final Drawable mCheckDrawable;
+    private final String[] mNumbers = new String[CACHED_NUMBERS];
+    // alphas of the themed colors, setAlpha() scales from these
+    private final int mStrokeAlpha;
+    private final int mBackgroundAlpha;
+    private int mAlpha = 0xFF;
+
+    CheckRenderer(Context context) {
+        mDensity = context.getResources().getDisplayMetrics().density;
+        mCenter = (float) SIZE * mDensity / 2;
+
+        mStrokePaint = new Paint();
+        mStrokePaint.setAntiAlias(true);
+        mStrokePaint.setStyle(Paint.Style.STROKE);
+        mStrokePaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC_OVER));
+        mStrokePaint.setStrokeWidth(STROKE_WIDTH * mDensity);
+        mStrokePaint.setColor(themeColor(context, R.attr.item_checkCircle_borderColor,
+                R.color.zhihu_item_checkCircle_borderColor));
+
+        mBackgroundPaint = new Paint();
+        mBackgroundPaint.setAntiAlias(true);
+        mBackgroundPaint.setStyle(Paint.Style.FILL);
+        mBackgroundPaint.setColor(themeColor(context, R.attr.item_checkCircle_backgroundColor,
+                R.color.zhihu_item_checkCircle_backgroundColor));
+
+        mStrokeAlpha = mStrokePaint.getAlpha();
+        mBackgroundAlpha = mBackgroundPaint.getAlpha();
+
+        mPendingPaint = new Paint(mStrokePaint);
+        mPendingPaint.setColor(mBackgroundPaint.getColor());
+        float radius = STROKE_RADIUS * mDensity;
+        mPendingBounds = new RectF(mCenter - radius, mCenter - radius, mCenter + radius, mCenter + radius);
+
+        mTextPaint = new TextPaint();
+        mTextPaint.setAntiAlias(true);
+        mTextPaint.setColor(Color.WHITE);
+        mTextPaint.setTypeface(Typeface.create(Typeface.DEFAULT, Typeface.BOLD));
+        mTextPaint.setTextSize(12.0f * mDensity);
+
+        mShadowPaint = new Paint();
+        mShadowPaint.setAntiAlias(true);
+        // all in dp
+        float outerRadius = STROKE_RADIUS + STROKE_WIDTH / 2;
+        float innerRadius = outerRadius - STROKE_WIDTH;
+        float gradientRadius = outerRadius + SHADOW_WIDTH;
+        float stop0 = (innerRadius - SHADOW_WIDTH) / gradientRadius;
+        float stop1 = innerRadius / gradientRadius;
+        float stop2 = outerRadius / gradientRadius;
+        float stop3 = 1.0f;
+        mShadowPaint.setShader(
+                new RadialGradient(mCenter, mCenter, gradientRadius * mDensity,
+                        new int[]{Color.parseColor("#00000000"), Color.parseColor("#0D000000"),
+                                Color.parseColor("#0D000000"), Color.parseColor("#00000000")},
+                        new float[]{stop0, stop1, stop2, stop3},
+                        Shader.TileMode.CLAMP));
+
+        mCheckDrawable = ResourcesCompat.getDrawable(context.getResources(),
+                R.drawable.ic_check_white_18dp, context.getTheme()).mutate();
+        int rectPadding = (int) (SIZE * mDensity / 2 - CONTENT_SIZE * mDensity / 2);
+        mCheckDrawable.setBounds(new Rect(rectPadding, rectPadding,
+                (int) (SIZE * mDensity - rectPadding), (int) (SIZE * mDensity - rectPadding)));
+    }
+
+    private static int themeColor(Context context, int attr, int defaultColorRes) {
+        TypedArray ta = context.getTheme().obtainStyledAttributes(new int[]{attr});
+        int defaultColor = ResourcesCompat.getColor(context.getResources(), defaultColorRes, context.getTheme());
+        int color = ta.getColor(0, defaultColor);
+        ta.recycle();
+        return color;
+    }
+
+    /**
+     * @return edge length of the painted square in pixels.
+     */
+    int getSize() {
+        return (int) (SIZE * mDensity);
+    }
+
+    /**
+     * Fades everything painted afterwards, the way a disabled check is shown without an offscreen layer.
+     *
+     * @param alpha 0 to 255.
+     */
+    void setAlpha(int alpha) {
+        if (mAlpha == alpha) {
+            return;
+        }
+        mAlpha = alpha;
+        mStrokePaint.setAlpha(mStrokeAlpha * alpha / 0xFF);
+        mBackgroundPaint.setAlpha(mBackgroundAlpha * alpha / 0xFF);
+        mPendingPaint.setAlpha(mBackgroundAlpha * alpha / 0xFF);
+        mShadowPaint.setAlpha(alpha);
+        mTextPaint.setAlpha(alpha);
+        mCheckDrawable.setAlpha(alpha);
+    }
+
+    /**
+     * @param checkedNum used when countable, {@link CheckView#UNCHECKED} for no number.
+     * @param checked    used when not countable.
+     */
+    void draw(Canvas canvas, boolean countable, boolean checked, int checkedNum) {
+        // draw outer and inner shadow
+        canvas.drawCircle(mCenter, mCenter,
+                (STROKE_RADIUS + STROKE_WIDTH / 2 + SHADOW_WIDTH) * mDensity, mShadowPaint);
+
+        // draw white stroke
+        canvas.drawCircle(mCenter, mCenter, STROKE_RADIUS * mDensity, mStrokePaint);
+
+        // draw content
+        if (countable) {
+            if (checkedNum != CheckView.UNCHECKED) {
+                canvas.drawCircle(mCenter, mCenter, BG_RADIUS * mDensity, mBackgroundPaint);
+                String text = numberOf(checkedNum);
+                float baseX = (getSize() - mTextPaint.measureText(text)) / 2;
+                float baseY = (getSize() - mTextPaint.descent() - mTextPaint.ascent()) / 2;
+                canvas.drawText(text, (int) baseX, (int) baseY, mTextPaint);
+            }
+        } else if (checked) {
+            canvas.drawCircle(mCenter, mCenter, BG_RADIUS * mDensity, mBackgroundPaint);
+            mCheckDrawable.draw(canvas);
+        }
+    }
+
+    /**
+     * Paints the empty circle with an arc turning along {@code uptimeMillis}, while the item is being checked.
+     */
+    void drawPending(Canvas canvas, long uptimeMillis) {
+        canvas.drawCircle(mCenter, mCenter,
+                (STROKE_RADIUS + STROKE_WIDTH / 2 + SHADOW_WIDTH) * mDensity, mShadowPaint);
+        canvas.drawCircle(mCenter, mCenter, STROKE_RADIUS * mDensity, mStrokePaint);
+        float start = (uptimeMillis % PENDING_PERIOD) * 360f / PENDING_PERIOD;
+        canvas.drawArc(mPendingBounds, start, PENDING_SWEEP, false, mPendingPaint);
+    }
+
+    private String numberOf(int num) {
+        if (num >= CACHED_NUMBERS) {
+            return String.valueOf(num);
+        }
+        if (mNumbers[num] == null) {
+            mNumbers[num] = String.valueOf(num);
+        }
+        return mNumbers[num];
+    }
+}
@@ -16,31 +16,74 @@
 package com.zhihu.matisse.internal.ui.widget;
 
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.drawable.Drawable;
-import androidx.recyclerview.widget.RecyclerView;
+import android.os.SystemClock;
+import android.text.TextPaint;
 import android.text.format.DateUtils;
 import android.util.AttributeSet;
-import android.view.LayoutInflater;
+import android.util.SparseArray;
+import android.util.TypedValue;
+import android.view.MotionEvent;
 import android.view.View;
-import android.widget.FrameLayout;
 import android.widget.ImageView;
-import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.appcompat.widget.AppCompatImageView;
+import androidx.core.content.res.ResourcesCompat;
+import androidx.core.view.ViewCompat;
+import androidx.core.view.accessibility.AccessibilityViewCommand;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.zhihu.matisse.R;
 import com.zhihu.matisse.internal.entity.Item;
 import com.zhihu.matisse.internal.entity.SelectionSpec;
 
-public class MediaGrid extends SquareFrameLayout implements View.OnClickListener {
+/**
+ * A single square cell of the media grid. The thumbnail is loaded into this view by the
+ * {@link com.zhihu.matisse.engine.ImageEngine}, the GIF tag, the video bar and the check circle are painted
+ * on top of it in {@link #onDraw(Canvas)}, so a cell is one view without any child to inflate, measure or
+ * lay out.
+ */
+public class MediaGrid extends AppCompatImageView implements View.OnClickListener {
+
+    private static final float VIDEO_BAR_HEIGHT = 30f; // dp
+    private static final float GIF_MARGIN = 8f; // dp
+    private static final float DURATION_MARGIN = 4f; // dp
+    private static final float VIDEO_ICON_MARGIN_START = 4f; // dp
+    private static final float VIDEO_ICON_MARGIN_BOTTOM = 6f; // dp
+    private static final float DURATION_TEXT_SIZE = 12f; // sp
+    private static final int DISABLED_CHECK_ALPHA = 0x80;
+
+    // formatted durations shared by all cells, keyed by seconds
+    private static final SparseArray<String> sDurationCache = new SparseArray<>();
 
-    private ImageView mThumbnail;
-    private CheckView mCheckView;
-    private ImageView mGifTag;
-    private TextView mVideoDuration;
-    private FrameLayout mVideoInfoLayout;
     private Item mMedia;
     private PreBindInfo mPreBindInfo;
     private OnMediaGridClickListener mListener;
-    private ImageView mVideoIcon;
+
+    private CheckRenderer mCheckRenderer;
+    private Drawable mGifTag;
+    private Drawable mVideoBar;
+    private Drawable mVideoIcon;
+    private TextPaint mDurationPaint;
+    private float mDensity;
+
+    private boolean mCountable;
+    private boolean mChecked;
+    private int mCheckedNum = CheckView.UNCHECKED;
+    private boolean mCheckEnabled = true;
+    private boolean mCheckVisible = true;
+    private boolean mPending;
+    private boolean mIsGif;
+    private boolean mIsVideo;
+    private String mDuration;
+    private float mDurationWidth;
+    private float mDownX = -1;
+    private float mDownY = -1;
 
     public MediaGrid(Context context) {
         super(context);
@@ -53,28 +96,110 @@ public class MediaGrid extends SquareFrameLayout implements View.OnClickListener
     }
 
     private void init(Context context) {
-        LayoutInflater.from(context).inflate(R.layout.media_grid_content, this, true);
+        mDensity = context.getResources().getDisplayMetrics().density;
+        mCheckRenderer = new CheckRenderer(context);
+        mGifTag = ResourcesCompat.getDrawable(getResources(), R.drawable.ic_gif, context.getTheme());
+        mVideoBar = ResourcesCompat.getDrawable(getResources(), R.drawable.gradient_bg, context.getTheme());
+        mVideoIcon = ResourcesCompat.getDrawable(getResources(), R.drawable.ic_video, context.getTheme());
+        mDurationPaint = new TextPaint();
+        mDurationPaint.setAntiAlias(true);
+        mDurationPaint.setColor(Color.WHITE);
+        mDurationPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP,
+                DURATION_TEXT_SIZE, getResources().getDisplayMetrics()));
 
-        mThumbnail = (ImageView) findViewById(R.id.media_thumbnail);
-        mCheckView = (CheckView) findViewById(R.id.check_view);
-        mGifTag = (ImageView) findViewById(R.id.gif);
-        mVideoInfoLayout = findViewById(R.id.video_info);
-        mVideoDuration = (TextView) findViewById(R.id.video_duration);
-        mVideoIcon = (ImageView) findViewById(R.id.video_icon);
+        setOnClickListener(this);
+        // clicks without a touch, e.g. from TalkBack or a keyboard, open the preview, this checks instead
+        ViewCompat.addAccessibilityAction(this, context.getString(R.string.action_check),
+                new AccessibilityViewCommand() {
+                    @Override
+                    public boolean perform(@NonNull View view, @Nullable CommandArguments arguments) {
+                        if (mListener == null || !mCheckVisible) {
+                            return false;
+                        }
+                        mListener.onCheckViewClicked(MediaGrid.this, mMedia, mPreBindInfo.mViewHolder);
+                        return true;
+                    }
+                });
+    }
 
-        mThumbnail.setOnClickListener(this);
-        mCheckView.setOnClickListener(this);
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        super.onMeasure(widthMeasureSpec, widthMeasureSpec);
     }
 
     @Override
-    public void onClick(View v) {
-        if (mListener != null) {
-            if (v == mThumbnail && SelectionSpec.getInstance().enablePreview) {
-                mListener.onThumbnailClicked(mThumbnail, mMedia, mPreBindInfo.mViewHolder);
-            } else if (v == mCheckView || (v == mThumbnail && !SelectionSpec.getInstance().enablePreview)) {
-                mListener.onCheckViewClicked(mCheckView, mMedia, mPreBindInfo.mViewHolder);
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        boolean rtl = isRtl();
+        int gifMargin = dp(GIF_MARGIN);
+        int gifLeft = rtl ? gifMargin : w - gifMargin - mGifTag.getIntrinsicWidth();
+        mGifTag.setBounds(gifLeft, h - gifMargin - mGifTag.getIntrinsicHeight(),
+                gifLeft + mGifTag.getIntrinsicWidth(), h - gifMargin);
+        mVideoBar.setBounds(0, h - dp(VIDEO_BAR_HEIGHT), w, h);
+        int iconMargin = dp(VIDEO_ICON_MARGIN_START);
+        int iconLeft = rtl ? w - iconMargin - mVideoIcon.getIntrinsicWidth() : iconMargin;
+        int iconBottom = h - dp(VIDEO_ICON_MARGIN_BOTTOM);
+        mVideoIcon.setBounds(iconLeft, iconBottom - mVideoIcon.getIntrinsicHeight(),
+                iconLeft + mVideoIcon.getIntrinsicWidth(), iconBottom);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        // thumbnail
+        super.onDraw(canvas);
+
+        if (mIsGif) {
+            mGifTag.draw(canvas);
+        }
+        if (mIsVideo) {
+            mVideoBar.draw(canvas);
+            mVideoIcon.draw(canvas);
+            if (mDuration != null) {
+                int margin = dp(DURATION_MARGIN);
+                float x = isRtl() ? margin : getWidth() - margin - mDurationWidth;
+                float y = getHeight() - margin - mDurationPaint.descent();
+                canvas.drawText(mDuration, x, y, mDurationPaint);
             }
         }
+        if (mCheckVisible) {
+            int save = canvas.save();
+            mCheckRenderer.setAlpha(mCheckEnabled ? 0xFF : DISABLED_CHECK_ALPHA);
+            canvas.translate(checkLeft(), 0);
+            if (mPending) {
+                mCheckRenderer.drawPending(canvas, SystemClock.uptimeMillis());
+                postInvalidateOnAnimation();
+            } else {
+                mCheckRenderer.draw(canvas, mCountable, mChecked, mCheckedNum);
+            }
+            canvas.restoreToCount(save);
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+            mDownX = event.getX();
+            mDownY = event.getY();
+        }
+        return super.onTouchEvent(event);
+    }
+
+    @Override
+    public void onClick(View v) {
+        if (mListener == null) {
+            return;
+        }
+        boolean onCheck = mCheckVisible
+                && mDownX >= checkLeft() && mDownX < checkLeft() + mCheckRenderer.getSize()
+                && mDownY < mCheckRenderer.getSize();
+        // the next click may come without a touch
+        mDownX = -1;
+        mDownY = -1;
+        if (!onCheck && SelectionSpec.getInstance().enablePreview) {
+            mListener.onThumbnailClicked(this, mMedia, mPreBindInfo.mViewHolder);
+        } else {
+            mListener.onCheckViewClicked(this, mMedia, mPreBindInfo.mViewHolder);
+        }
     }
 
     public void preBindMedia(PreBindInfo info) {
@@ -83,57 +208,113 @@ public class MediaGrid extends SquareFrameLayout implements View.OnClickListener
 
     public void bindMedia(Item item) {
         mMedia = item;
-        setGifTag();
-        initCheckView();
+        mCountable = mPreBindInfo.mCheckViewCountable;
+        mIsGif = item.isGif();
+        mIsVideo = item.isVideo();
+        if (mIsVideo) {
+            mDuration = formatDuration(item.duration);
+            mDurationWidth = mDurationPaint.measureText(mDuration);
+        } else {
+            mDuration = null;
+        }
         setImage();
-        setVideoDuration();
+        invalidate();
     }
 
     public Item getMedia() {
         return mMedia;
     }
 
-    private void setGifTag() {
-        mGifTag.setVisibility(mMedia.isGif() ? View.VISIBLE : View.GONE);
-    }
-
-    private void initCheckView() {
-        mCheckView.setCountable(mPreBindInfo.mCheckViewCountable);
+    /**
+     * @return a copy of the thumbnail as shown, without the tags and the check, null while it is loading.
+     */
+    @Nullable
+    public Bitmap copyThumbnail() {
+        Drawable drawable = getDrawable();
+        if (drawable == null || mPreBindInfo == null || drawable == mPreBindInfo.mPlaceholder
+                || getWidth() == 0 || getHeight() == 0) {
+            return null;
+        }
+        Bitmap copy = Bitmap.createBitmap(getWidth(), getHeight(), Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(copy);
+        canvas.concat(getImageMatrix());
+        drawable.draw(canvas);
+        return copy;
     }
 
     public void setCheckEnabled(boolean enabled) {
-        mCheckView.setEnabled(enabled);
+        if (mCheckEnabled != enabled) {
+            mCheckEnabled = enabled;
+            invalidate();
+        }
     }
 
     public void setCheckVisible(boolean isVisible) {
-        mCheckView.setVisibility(isVisible ? VISIBLE : GONE);
+        if (mCheckVisible != isVisible) {
+            mCheckVisible = isVisible;
+            invalidate();
+        }
+    }
+
+    /**
+     * Shows that the item is being checked before it can be selected.
+     */
+    public void setPending(boolean pending) {
+        if (mPending != pending) {
+            mPending = pending;
+            invalidate();
+        }
     }
 
     public void setCheckedNum(int checkedNum) {
-        mCheckView.setCheckedNum(checkedNum);
+        if (!mCountable) {
+            throw new IllegalStateException("MediaGrid is not countable, call setChecked() instead.");
+        }
+        if (checkedNum != CheckView.UNCHECKED && checkedNum <= 0) {
+            throw new IllegalArgumentException("checked num can't be negative.");
+        }
+        mCheckedNum = checkedNum;
+        invalidate();
     }
 
     public void setChecked(boolean checked) {
-        mCheckView.setChecked(checked);
+        if (mCountable) {
+            throw new IllegalStateException("MediaGrid is countable, call setCheckedNum() instead.");
+        }
+        mChecked = checked;
+        invalidate();
     }
 
     private void setImage() {
         if (mMedia.isGif()) {
             SelectionSpec.getInstance().imageEngine.loadGifThumbnail(getContext(), mPreBindInfo.mResize,
-                    mPreBindInfo.mPlaceholder, mThumbnail, mMedia.getContentUri());
+                    mPreBindInfo.mPlaceholder, this, mMedia.getContentUri());
         } else {
             SelectionSpec.getInstance().imageEngine.loadThumbnail(getContext(), mPreBindInfo.mResize,
-                    mPreBindInfo.mPlaceholder, mThumbnail, mMedia.getContentUri());
+                    mPreBindInfo.mPlaceholder, this, mMedia.getContentUri());
         }
     }
 
-    private void setVideoDuration() {
-        if (mMedia.isVideo()) {
-            mVideoInfoLayout.setVisibility(VISIBLE);
-            mVideoDuration.setText(DateUtils.formatElapsedTime(mMedia.duration / 1000));
-        } else {
-            mVideoInfoLayout.setVisibility(GONE);
+    private static String formatDuration(long durationMs) {
+        int seconds = (int) (durationMs / 1000);
+        String formatted = sDurationCache.get(seconds);
+        if (formatted == null) {
+            formatted = DateUtils.formatElapsedTime(seconds);
+            sDurationCache.put(seconds, formatted);
         }
+        return formatted;
+    }
+
+    private int checkLeft() {
+        return isRtl() ? 0 : getWidth() - mCheckRenderer.getSize();
+    }
+
+    private boolean isRtl() {
+        return ViewCompat.getLayoutDirection(this) == ViewCompat.LAYOUT_DIRECTION_RTL;
+    }
+
+    private int dp(float value) {
+        return (int) (value * mDensity + 0.5f);
     }
 
     public void setOnMediaGridClickListener(OnMediaGridClickListener listener) {
@@ -148,7 +329,7 @@ public class MediaGrid extends SquareFrameLayout implements View.OnClickListener
 
         void onThumbnailClicked(ImageView thumbnail, Item item, RecyclerView.ViewHolder holder);
 
-        void onCheckViewClicked(CheckView checkView, Item item, RecyclerView.ViewHolder holder);
+        void onCheckViewClicked(View checkView, Item item, RecyclerView.ViewHolder holder);
     }
 
     public static class PreBindInfo {
@@ -16,6 +16,7 @@
 package com.zhihu.matisse.internal.ui.widget;
 
 import android.graphics.Rect;
+import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import android.view.View;
 
@@ -36,6 +37,14 @@ public class MediaGridInset extends RecyclerView.ItemDecoration {
                                RecyclerView.State state) {
         int position = parent.getChildAdapterPosition(view); // item position
         int column = position % mSpanCount; // item column
+        if (view.getLayoutParams() instanceof GridLayoutManager.LayoutParams) {
+            GridLayoutManager.LayoutParams lp = (GridLayoutManager.LayoutParams) view.getLayoutParams();
+            if (mSpanCount > 1 && lp.getSpanSize() == mSpanCount) {
+                // full width section header
+                return;
+            }
+            column = lp.getSpanIndex();
+        }
 
         if (mIncludeEdge) {
             // spacing - column * ((1f / spanCount) * spacing)
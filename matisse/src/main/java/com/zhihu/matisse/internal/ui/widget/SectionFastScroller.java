@@ -0,0 +1,220 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.ui.widget;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.text.TextPaint;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+import android.widget.SectionIndexer;
+
+import androidx.annotation.NonNull;
+import androidx.core.view.ViewCompat;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.zhihu.matisse.R;
+
+/**
+ * Draggable scroller drawn over a {@link RecyclerView} whose adapter is a {@link SectionIndexer}. Dragging
+ * the thumb jumps straight to the first position of the section under the finger, so no row between the
+ * current and the target position is bound, and a bubble shows the label of that section.
+ */
+public class SectionFastScroller extends RecyclerView.ItemDecoration implements RecyclerView.OnItemTouchListener {
+
+    private static final float THUMB_WIDTH = 6f; // dp
+    private static final float THUMB_HEIGHT = 48f; // dp
+    private static final float THUMB_MARGIN = 4f; // dp
+    private static final float TOUCH_WIDTH = 32f; // dp
+    private static final float BUBBLE_PADDING = 12f; // dp
+    private static final float BUBBLE_MARGIN = 16f; // dp
+    private static final float BUBBLE_TEXT_SIZE = 16f; // sp
+    private static final long HIDE_DELAY = 1500; // ms
+
+    private final RecyclerView mRecyclerView;
+    private final SectionIndexer mIndexer;
+    private final Paint mThumbPaint;
+    private final TextPaint mTextPaint;
+    private final RectF mRect = new RectF();
+    private final float mDensity;
+
+    private boolean mVisible;
+    private boolean mDragging;
+    private float mThumbTop;
+    private int mSection = -1;
+
+    private final Runnable mHide = new Runnable() {
+        @Override
+        public void run() {
+            mVisible = false;
+            mRecyclerView.invalidate();
+        }
+    };
+
+    private final RecyclerView.OnScrollListener mScrollListener = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+            if (dy != 0 && isScrollable()) {
+                show();
+            }
+        }
+    };
+
+    public SectionFastScroller(RecyclerView recyclerView, SectionIndexer indexer) {
+        mRecyclerView = recyclerView;
+        mIndexer = indexer;
+
+        Context context = recyclerView.getContext();
+        mDensity = context.getResources().getDisplayMetrics().density;
+        TypedArray ta = context.getTheme().obtainStyledAttributes(
+                new int[]{R.attr.item_checkCircle_backgroundColor});
+        int color = ta.getColor(0, Color.DKGRAY);
+        ta.recycle();
+
+        mThumbPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mThumbPaint.setColor(color);
+        mTextPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        mTextPaint.setColor(Color.WHITE);
+        mTextPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP,
+                BUBBLE_TEXT_SIZE, context.getResources().getDisplayMetrics()));
+
+        recyclerView.addItemDecoration(this);
+        recyclerView.addOnItemTouchListener(this);
+        recyclerView.addOnScrollListener(mScrollListener);
+    }
+
+    @Override
+    public void onDrawOver(@NonNull Canvas canvas, @NonNull RecyclerView parent, @NonNull RecyclerView.State state) {
+        if (!mVisible) {
+            return;
+        }
+        boolean rtl = isRtl();
+        float thumbTop = mDragging ? mThumbTop : scrolledThumbTop();
+        float thumbLeft = rtl ? dp(THUMB_MARGIN) : parent.getWidth() - dp(THUMB_MARGIN) - dp(THUMB_WIDTH);
+        float radius = dp(THUMB_WIDTH) / 2;
+        mRect.set(thumbLeft, thumbTop, thumbLeft + dp(THUMB_WIDTH), thumbTop + dp(THUMB_HEIGHT));
+        canvas.drawRoundRect(mRect, radius, radius, mThumbPaint);
+
+        Object[] sections = mIndexer.getSections();
+        if (!mDragging || mSection < 0 || mSection >= sections.length) {
+            return;
+        }
+        String label = sections[mSection].toString();
+        float padding = dp(BUBBLE_PADDING);
+        float width = mTextPaint.measureText(label) + padding * 2;
+        float height = mTextPaint.descent() - mTextPaint.ascent() + padding * 2;
+        float left = rtl ? mRect.right + dp(BUBBLE_MARGIN) : mRect.left - dp(BUBBLE_MARGIN) - width;
+        float top = Math.max(0, Math.min(mRect.centerY() - height / 2, parent.getHeight() - height));
+        mRect.set(left, top, left + width, top + height);
+        canvas.drawRoundRect(mRect, height / 2, height / 2, mThumbPaint);
+        canvas.drawText(label, left + padding,
+                mRect.centerY() - (mTextPaint.ascent() + mTextPaint.descent()) / 2, mTextPaint);
+    }
+
+    @Override
+    public boolean onInterceptTouchEvent(@NonNull RecyclerView rv, @NonNull MotionEvent e) {
+        if (e.getActionMasked() != MotionEvent.ACTION_DOWN || !mVisible || !isOnThumb(e.getX(), e.getY())) {
+            return false;
+        }
+        mDragging = true;
+        mRecyclerView.removeCallbacks(mHide);
+        mRecyclerView.stopScroll();
+        rv.getParent().requestDisallowInterceptTouchEvent(true);
+        dragTo(e.getY());
+        return true;
+    }
+
+    @Override
+    public void onTouchEvent(@NonNull RecyclerView rv, @NonNull MotionEvent e) {
+        switch (e.getActionMasked()) {
+            case MotionEvent.ACTION_MOVE:
+                dragTo(e.getY());
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                mDragging = false;
+                mSection = -1;
+                show();
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void onRequestDisallowInterceptTouchEvent(boolean disallowIntercept) {
+    }
+
+    private void dragTo(float y) {
+        float track = mRecyclerView.getHeight() - dp(THUMB_HEIGHT);
+        mThumbTop = Math.max(0, Math.min(y - dp(THUMB_HEIGHT) / 2, track));
+        RecyclerView.Adapter adapter = mRecyclerView.getAdapter();
+        if (adapter == null || adapter.getItemCount() == 0 || mIndexer.getSections().length == 0) {
+            mRecyclerView.invalidate();
+            return;
+        }
+        int position = (int) (mThumbTop / track * (adapter.getItemCount() - 1));
+        int section = mIndexer.getSectionForPosition(position);
+        if (section != mSection) {
+            mSection = section;
+            ((LinearLayoutManager) mRecyclerView.getLayoutManager())
+                    .scrollToPositionWithOffset(mIndexer.getPositionForSection(section), 0);
+        }
+        mRecyclerView.invalidate();
+    }
+
+    private void show() {
+        mVisible = true;
+        mRecyclerView.removeCallbacks(mHide);
+        if (!mDragging) {
+            mRecyclerView.postDelayed(mHide, HIDE_DELAY);
+        }
+        mRecyclerView.invalidate();
+    }
+
+    private boolean isScrollable() {
+        return mIndexer.getSections().length > 1
+                && mRecyclerView.computeVerticalScrollRange() > mRecyclerView.getHeight() * 2;
+    }
+
+    private boolean isOnThumb(float x, float y) {
+        boolean inStrip = isRtl() ? x < dp(TOUCH_WIDTH) : x > mRecyclerView.getWidth() - dp(TOUCH_WIDTH);
+        float top = scrolledThumbTop();
+        return inStrip && y >= top - dp(THUMB_HEIGHT) / 2 && y <= top + dp(THUMB_HEIGHT) * 3 / 2;
+    }
+
+    private float scrolledThumbTop() {
+        int range = mRecyclerView.computeVerticalScrollRange() - mRecyclerView.computeVerticalScrollExtent();
+        if (range <= 0) {
+            return 0;
+        }
+        float fraction = (float) mRecyclerView.computeVerticalScrollOffset() / range;
+        return fraction * (mRecyclerView.getHeight() - dp(THUMB_HEIGHT));
+    }
+
+    private boolean isRtl() {
+        return ViewCompat.getLayoutDirection(mRecyclerView) == ViewCompat.LAYOUT_DIRECTION_RTL;
+    }
+
+    private float dp(float value) {
+        return value * mDensity;
+    }
+}
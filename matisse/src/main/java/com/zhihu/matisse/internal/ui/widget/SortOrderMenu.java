@@ -0,0 +1,65 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.ui.widget;
+
+import android.view.Menu;
+import android.view.MenuItem;
+
+import androidx.annotation.Nullable;
+
+import com.zhihu.matisse.R;
+import com.zhihu.matisse.SortOrder;
+
+/**
+ * Maps the items of the {@code matisse_sort} menu to {@link SortOrder}.
+ */
+public final class SortOrderMenu {
+
+    // indexed by SortOrder ordinal
+    private static final int[] ITEM_IDS = {
+            R.id.sort_date_taken_desc,
+            R.id.sort_date_taken_asc,
+            R.id.sort_date_added_desc,
+            R.id.sort_date_added_asc,
+            R.id.sort_size_desc,
+            R.id.sort_size_asc,
+            R.id.sort_display_name_asc,
+            R.id.sort_display_name_desc
+    };
+
+    private SortOrderMenu() {
+    }
+
+    public static void check(Menu menu, SortOrder order) {
+        MenuItem item = menu.findItem(ITEM_IDS[order.ordinal()]);
+        if (item != null) {
+            item.setChecked(true);
+        }
+    }
+
+    /**
+     * @return the order {@code item} stands for, null if it is not a sort order item.
+     */
+    @Nullable
+    public static SortOrder orderOf(MenuItem item) {
+        for (int i = 0; i < ITEM_IDS.length; i++) {
+            if (ITEM_IDS[i] == item.getItemId()) {
+                return SortOrder.values()[i];
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.utils;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import com.zhihu.matisse.MimeType;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Tells the real container of a media file from its first bytes, regardless of its name.
+ */
+public final class FormatSniffer {
+
+    // one MPEG-TS packet and the sync byte of the next
+    private static final int HEADER_SIZE = 189;
+    private static final int TS_PACKET_SIZE = 188;
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private FormatSniffer() {
+        throw new AssertionError("oops! the utility class is about to be instantiated...");
+    }
+
+    /**
+     * @return mask of the {@link MimeType}s the file is, see {@link MimeType#mask()}, 0 if it cannot be read or
+     * the format is not known.
+     */
+    public static int sniff(ContentResolver resolver, Uri uri) {
+        byte[] header = new byte[HEADER_SIZE];
+        int length = 0;
+        ParcelFileDescriptor pfd = null;
+        try {
+            pfd = resolver.openFileDescriptor(uri, "r");
+            if (pfd == null) {
+                return 0;
+            }
+            FileInputStream in = new FileInputStream(pfd.getFileDescriptor());
+            int read;
+            while (length < HEADER_SIZE && (read = in.read(header, length, HEADER_SIZE - length)) != -1) {
+                length += read;
+            }
+        } catch (IOException | SecurityException e) {
+            return 0;
+        } finally {
+            if (pfd != null) {
+                try {
+                    pfd.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return detect(header, length);
+    }
+
+    private static int detect(byte[] h, int length) {
+        if (startsWith(h, length, 0, 0xFF, 0xD8, 0xFF)) {
+            return MimeType.JPEG.mask();
+        }
+        if (startsWith(h, length, 0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return MimeType.PNG.mask();
+        }
+        if (startsWith(h, length, 0, 'G', 'I', 'F', '8')) {
+            return MimeType.GIF.mask();
+        }
+        if (startsWith(h, length, 0, 'B', 'M')) {
+            return MimeType.BMP.mask();
+        }
+        if (startsWith(h, length, 0, 'R', 'I', 'F', 'F')) {
+            if (startsWith(h, length, 8, 'W', 'E', 'B', 'P')) {
+                return MimeType.WEBP.mask();
+            }
+            if (startsWith(h, length, 8, 'A', 'V', 'I', ' ')) {
+                return MimeType.AVI.mask();
+            }
+            return 0;
+        }
+        if (startsWith(h, length, 4, 'f', 't', 'y', 'p') && length >= 12) {
+            return isoBrandMask(h, length);
+        }
+        if (startsWith(h, length, 0, 0x1A, 0x45, 0xDF, 0xA3)) {
+            // EBML, the DocType element follows within the first bytes
+            return new String(h, 0, length, ASCII).contains("webm")
+                    ? MimeType.WEBM.mask() : MimeType.MKV.mask();
+        }
+        if (startsWith(h, length, 0, 0x00, 0x00, 0x01) && length >= 4
+                && ((h[3] & 0xFF) == 0xBA || (h[3] & 0xFF) == 0xB3)) {
+            return MimeType.MPEG.mask();
+        }
+        if (length > TS_PACKET_SIZE && h[0] == 0x47 && h[TS_PACKET_SIZE] == 0x47) {
+            return MimeType.TS.mask();
+        }
+        return 0;
+    }
+
+    /**
+     * Tells the ISO base media file by the major brand of its ftyp box, 0 for brands of formats not known here,
+     * e.g. AVIF or M4A.
+     */
+    private static int isoBrandMask(byte[] h, int length) {
+        String brand = new String(h, 8, 4, ASCII);
+        switch (brand) {
+            case "heic":
+            case "heix":
+            case "hevc":
+            case "hevx":
+            case "heim":
+            case "heis":
+                return MimeType.HEIF.mask() | MimeType.HEIC.mask();
+            case "mif1":
+            case "msf1":
+                // the generic HEIF brands, AVIF uses them as well, the codec shows in the compatible brands
+                if (hasCompatibleBrand(h, length, "avif", "avis")) {
+                    return 0;
+                }
+                return hasCompatibleBrand(h, length, "heic", "heix", "hevc", "hevx", "heim", "heis")
+                        ? MimeType.HEIF.mask() | MimeType.HEIC.mask() : MimeType.HEIF.mask();
+            case "qt  ":
+                return MimeType.QUICKTIME.mask();
+            case "isom":
+            case "iso2":
+            case "iso3":
+            case "iso4":
+            case "iso5":
+            case "iso6":
+            case "iso7":
+            case "iso8":
+            case "iso9":
+            case "mp41":
+            case "mp42":
+            case "mp71":
+            case "avc1":
+            case "M4V ":
+            case "M4VH":
+            case "M4VP":
+            case "dash":
+            case "mmp4":
+            case "msnv":
+            case "MSNV":
+            case "f4v ":
+                return MimeType.MP4.mask();
+            default:
+                if (brand.startsWith("3g2")) {
+                    return MimeType.THREEGPP2.mask();
+                } else if (brand.startsWith("3g")) {
+                    return MimeType.THREEGPP.mask();
+                }
+                return 0;
+        }
+    }
+
+    /**
+     * @return whether the ftyp box lists one of {@code brands} among its compatible brands, as far as read.
+     */
+    private static boolean hasCompatibleBrand(byte[] h, int length, String... brands) {
+        long boxSize = ((h[0] & 0xFFL) << 24) | ((h[1] & 0xFF) << 16) | ((h[2] & 0xFF) << 8) | (h[3] & 0xFF);
+        int end = (int) Math.min(boxSize, length);
+        // size, type, major brand and minor version come first
+        for (int offset = 16; offset + 4 <= end; offset += 4) {
+            String compatible = new String(h, offset, 4, ASCII);
+            for (String brand : brands) {
+                if (brand.equals(compatible)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWith(byte[] h, int length, int offset, int... magic) {
+        if (length < offset + magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if ((h[offset + i] & 0xFF) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.utils;
+
+import androidx.annotation.WorkerThread;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Copies a JPEG without its metadata, segment by segment and without decoding it. The EXIF segment is replaced
+ * by one holding the orientation only, XMP, IPTC, comments and the other application segments are dropped.
+ * JFIF, ICC profile and Adobe segments are kept as they affect how the image is shown. The entropy-coded data
+ * is copied unchanged up to the end of the image, what follows, e.g. the other images of a multi-picture file
+ * with their own EXIF, is dropped. Reads in constant memory, one segment at most.
+ */
+public final class JpegMetadataStripper {
+
+    private static final int SOI = 0xD8;
+    private static final int EOI = 0xD9;
+    private static final int SOS = 0xDA;
+    private static final int TEM = 0x01;
+    private static final int RST0 = 0xD0;
+    private static final int RST7 = 0xD7;
+    private static final int APP0 = 0xE0;
+    private static final int APP1 = 0xE1;
+    private static final int APP2 = 0xE2;
+    private static final int APP14 = 0xEE;
+    private static final int APP15 = 0xEF;
+    private static final int COM = 0xFE;
+    private static final int MAX_SEGMENT = 0xFFFF;
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TYPE_SHORT = 3;
+    private static final byte[] EXIF = {'E', 'x', 'i', 'f', 0, 0};
+    private static final byte[] ICC_PROFILE = {'I', 'C', 'C', '_', 'P', 'R', 'O', 'F', 'I', 'L', 'E', 0};
+
+    private JpegMetadataStripper() {
+        throw new AssertionError("oops! the utility class is about to be instantiated...");
+    }
+
+    /**
+     * @param in positioned at the start of the JPEG, read sequentially so that pipes do too.
+     * @return false if {@code in} is not a JPEG, nothing is written then.
+     */
+    @WorkerThread
+    public static boolean strip(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_SEGMENT + 2).order(ByteOrder.BIG_ENDIAN);
+        read(in, buffer, 2);
+        if ((buffer.get(0) & 0xFF) != 0xFF || (buffer.get(1) & 0xFF) != SOI) {
+            return false;
+        }
+        write(out, buffer);
+        while (true) {
+            // markers may be preceded by any number of fill bytes
+            int marker;
+            do {
+                read(in, buffer, 1);
+                marker = buffer.get(0) & 0xFF;
+            } while (marker != 0xFF);
+            do {
+                read(in, buffer, 1);
+                marker = buffer.get(0) & 0xFF;
+            } while (marker == 0xFF);
+
+            if (marker == SOS || marker == EOI) {
+                buffer.clear();
+                buffer.put((byte) 0xFF).put((byte) marker).flip();
+                write(out, buffer);
+                if (marker == SOS) {
+                    copyScans(in, out, buffer);
+                }
+                return true;
+            }
+            if (marker == TEM || marker >= RST0 && marker <= RST7) {
+                buffer.clear();
+                buffer.put((byte) 0xFF).put((byte) marker).flip();
+                write(out, buffer);
+                continue;
+            }
+
+            read(in, buffer, 2);
+            int size = buffer.getShort(0) & 0xFFFF;
+            if (size < 2) {
+                throw new IOException("Corrupt segment " + Integer.toHexString(marker));
+            }
+            read(in, buffer, size - 2);
+            if (marker == APP1) {
+                int orientation = exifOrientation(buffer);
+                if (orientation > 1) {
+                    writeOrientation(out, buffer, orientation);
+                }
+            } else if (marker == APP2 ? startsWith(buffer, ICC_PROFILE)
+                    : marker == APP0 || marker == APP14 || marker < APP0 || (marker > APP15 && marker != COM)) {
+                // APP2 holds the MPF index of multi-picture files and FlashPix data too, only ICC profiles stay
+                writeSegment(out, marker, buffer);
+            }
+        }
+    }
+
+    /**
+     * @param payload an APP1 payload, from position 0 to its limit.
+     * @return the EXIF orientation tag, 0 if the payload is not EXIF or has none.
+     */
+    private static int exifOrientation(ByteBuffer payload) {
+        int limit = payload.limit();
+        if (!startsWith(payload, EXIF)) {
+            return 0;
+        }
+        int tiff = EXIF.length;
+        if (limit < tiff + 8) {
+            return 0;
+        }
+        ByteOrder order = payload.get(tiff) == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        payload.order(order);
+        try {
+            int ifd = tiff + payload.getInt(tiff + 4);
+            if (ifd < tiff || ifd + 2 > limit) {
+                return 0;
+            }
+            int count = payload.getShort(ifd) & 0xFFFF;
+            for (int i = 0; i < count; i++) {
+                int entry = ifd + 2 + i * 12;
+                if (entry + 12 > limit) {
+                    return 0;
+                }
+                if ((payload.getShort(entry) & 0xFFFF) == TAG_ORIENTATION) {
+                    return payload.getShort(entry + 8) & 0xFFFF;
+                }
+            }
+            return 0;
+        } finally {
+            payload.order(ByteOrder.BIG_ENDIAN);
+        }
+    }
+
+    private static boolean startsWith(ByteBuffer payload, byte[] prefix) {
+        if (payload.limit() < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (payload.get(i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeOrientation(WritableByteChannel out, ByteBuffer buffer, int orientation)
+            throws IOException {
+        buffer.clear();
+        buffer.put(EXIF)
+                // TIFF header, big endian, IFD0 right after it
+                .put((byte) 'M').put((byte) 'M').putShort((short) 42).putInt(8)
+                // one entry, orientation as a short, no next IFD
+                .putShort((short) 1)
+                .putShort((short) TAG_ORIENTATION).putShort((short) TYPE_SHORT).putInt(1)
+                .putShort((short) orientation).putShort((short) 0)
+                .putInt(0)
+                .flip();
+        writeSegment(out, APP1, buffer);
+    }
+
+    private static void writeSegment(WritableByteChannel out, int marker, ByteBuffer payload) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(4);
+        header.put((byte) 0xFF).put((byte) marker).putShort((short) (payload.remaining() + 2)).flip();
+        write(out, header);
+        write(out, payload);
+    }
+
+    /**
+     * Copies the scans and whatever is between them up to and including EOI. Scans escape their 0xFF bytes, so
+     * the first 0xFF 0xD9 is the end of the image.
+     */
+    private static void copyScans(ReadableByteChannel in, WritableByteChannel out, ByteBuffer buffer)
+            throws IOException {
+        boolean afterFf = false;
+        buffer.clear();
+        while (in.read(buffer) != -1) {
+            buffer.flip();
+            for (int i = 0; i < buffer.limit(); i++) {
+                int b = buffer.get(i) & 0xFF;
+                if (afterFf && b == EOI) {
+                    buffer.limit(i + 1);
+                    write(out, buffer);
+                    return;
+                }
+                afterFf = b == 0xFF;
+            }
+            write(out, buffer);
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Reads exactly {@code count} bytes into {@code buffer}, left flipped at position 0.
+     */
+    private static void read(ReadableByteChannel in, ByteBuffer buffer, int count) throws IOException {
+        buffer.clear();
+        buffer.limit(count);
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer) == -1) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+    }
+
+    private static void write(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.utils;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.provider.MediaStore;
+import android.text.TextUtils;
+
+import androidx.annotation.WorkerThread;
+import androidx.collection.LongSparseArray;
+import androidx.collection.LruCache;
+
+import com.zhihu.matisse.internal.entity.Item;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves the file paths of many uris at once. Media provider uris are looked up with one {@code _data}
+ * query per volume and {@link #CHUNK_SIZE} ids, document uris go through {@link PathUtils#getPath(Context, Uri)}
+ * one by one. Paths are remembered for the process.
+ */
+public final class PathResolver {
+
+    // below the 999 bound variables SQLite allows
+    private static final int CHUNK_SIZE = 500;
+    private static final int MAX_PATHS = 1000;
+    private static final String SCHEME_FILE = "file";
+
+    private static final LruCache<String, String> sPaths = new LruCache<>(MAX_PATHS);
+
+    private PathResolver() {
+        throw new AssertionError("oops! the utility class is about to be instantiated...");
+    }
+
+    /**
+     * @return the path of each item, the one the grid query read if any, null for items without one. Only the
+     * items without one are looked up, remembered by their modification date as well since a row edited in
+     * place may have been moved.
+     */
+    @WorkerThread
+    public static List<String> resolveItems(Context context, List<Item> items) {
+        List<String> paths = new ArrayList<>(items.size());
+        List<Uri> uris = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            Item item = items.get(i);
+            paths.add(item.path);
+            if (item.path == null) {
+                Uri uri = item.getContentUri();
+                uris.add(uri);
+                keys.add(uri + "@" + item.dateModified);
+                positions.add(i);
+            }
+        }
+        if (uris.isEmpty()) {
+            return paths;
+        }
+        List<String> resolved = resolve(context, uris, keys);
+        for (int i = 0; i < positions.size(); i++) {
+            paths.set(positions.get(i), resolved.get(i));
+        }
+        return paths;
+    }
+
+    /**
+     * @param keys what the path of each uri is remembered by.
+     * @return the path of each uri in the same order, null for uris without one.
+     */
+    private static List<String> resolve(Context context, List<Uri> uris, List<String> keys) {
+        String[] paths = new String[uris.size()];
+        // volume to the positions of its uris
+        Map<String, List<Integer>> byVolume = new HashMap<>();
+        for (int i = 0; i < uris.size(); i++) {
+            Uri uri = uris.get(i);
+            String cached = sPaths.get(keys.get(i));
+            if (cached != null) {
+                paths[i] = cached;
+            } else if (SCHEME_FILE.equalsIgnoreCase(uri.getScheme())) {
+                paths[i] = uri.getPath();
+            } else if (isMediaStoreItem(context, uri)) {
+                String volume = uri.getPathSegments().get(0);
+                List<Integer> positions = byVolume.get(volume);
+                if (positions == null) {
+                    positions = new ArrayList<>();
+                    byVolume.put(volume, positions);
+                }
+                positions.add(i);
+            } else {
+                paths[i] = PathUtils.getPath(context, uri);
+                remember(keys.get(i), paths[i]);
+            }
+        }
+
+        ContentResolver resolver = context.getContentResolver();
+        for (Map.Entry<String, List<Integer>> entry : byVolume.entrySet()) {
+            List<Integer> positions = entry.getValue();
+            for (int start = 0; start < positions.size(); start += CHUNK_SIZE) {
+                List<Integer> chunk = positions.subList(start, Math.min(start + CHUNK_SIZE, positions.size()));
+                LongSparseArray<String> found = queryPaths(resolver, entry.getKey(), uris, chunk);
+                for (int position : chunk) {
+                    Uri uri = uris.get(position);
+                    paths[position] = found.get(Long.parseLong(uri.getLastPathSegment()));
+                    remember(keys.get(position), paths[position]);
+                }
+            }
+        }
+        return new ArrayList<>(Arrays.asList(paths));
+    }
+
+    private static LongSparseArray<String> queryPaths(ContentResolver resolver, String volume, List<Uri> uris,
+                                                      List<Integer> positions) {
+        String[] args = new String[positions.size()];
+        String[] placeholders = new String[positions.size()];
+        for (int i = 0; i < positions.size(); i++) {
+            args[i] = uris.get(positions.get(i)).getLastPathSegment();
+            placeholders[i] = "?";
+        }
+        LongSparseArray<String> paths = new LongSparseArray<>(args.length);
+        Cursor cursor = resolver.query(MediaStore.Files.getContentUri(volume),
+                new String[]{MediaStore.Files.FileColumns._ID, MediaStore.MediaColumns.DATA},
+                MediaStore.Files.FileColumns._ID + " IN (" + TextUtils.join(",", placeholders) + ")", args, null);
+        if (cursor == null) {
+            return paths;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                paths.put(cursor.getLong(0), cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return paths;
+    }
+
+    /**
+     * @return whether {@code uri} is a single media provider row, e.g. content://media/external/images/media/12.
+     */
+    private static boolean isMediaStoreItem(Context context, Uri uri) {
+        if (!ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())
+                || !MediaStore.AUTHORITY.equals(uri.getAuthority())
+                || Platform.hasKitKat() && DocumentsContract.isDocumentUri(context, uri)) {
+            return false;
+        }
+        String id = uri.getLastPathSegment();
+        if (uri.getPathSegments().size() < 2 || id == null) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            if (!Character.isDigit(id.charAt(i))) {
+                return false;
+            }
+        }
+        return !id.isEmpty();
+    }
+
+    private static void remember(String key, String path) {
+        if (path != null) {
+            sPaths.put(key, path);
+        }
+    }
+}
@@ -10,6 +10,8 @@ import android.os.Environment;
 import android.provider.DocumentsContract;
 import android.provider.MediaStore;
 
+import java.io.File;
+
 /**
  * http://stackoverflow.com/a/27271131/4739220
  */
@@ -38,7 +40,10 @@ public class PathUtils {
                     return Environment.getExternalStorageDirectory() + "/" + split[1];
                 }
 
-                // TODO handle non-primary volumes
+                String volumeRoot = getVolumeRoot(context, type);
+                if (volumeRoot != null) {
+                    return volumeRoot + "/" + split[1];
+                }
             } else if (isDownloadsDocument(uri)) { // DownloadsProvider
 
                 final String id = DocumentsContract.getDocumentId(uri);
@@ -109,6 +114,26 @@ public class PathUtils {
     }
 
 
+    /**
+     * Finds the mount point of a removable volume, e.g. /storage/1234-ABCD for the uuid 1234-ABCD, through the
+     * app specific directories which exist on every mounted volume.
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static String getVolumeRoot(Context context, String uuid) {
+        for (File dir : context.getExternalFilesDirs(null)) {
+            if (dir == null) {
+                // volume not mounted
+                continue;
+            }
+            String path = dir.getAbsolutePath();
+            int end = path.indexOf("/Android/data");
+            if (end != -1 && path.substring(0, end).endsWith("/" + uuid)) {
+                return path.substring(0, end);
+            }
+        }
+        return null;
+    }
+
     /**
      * @param uri The Uri to check.
      * @return Whether the Uri authority is ExternalStorageProvider.
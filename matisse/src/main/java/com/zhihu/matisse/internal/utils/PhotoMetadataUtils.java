@@ -30,10 +30,11 @@ import android.util.Log;
 
 import com.zhihu.matisse.MimeType;
 import com.zhihu.matisse.R;
-import com.zhihu.matisse.filter.Filter;
 import com.zhihu.matisse.internal.entity.Item;
 import com.zhihu.matisse.internal.entity.SelectionSpec;
 import com.zhihu.matisse.internal.entity.IncapableCause;
+import com.zhihu.matisse.internal.model.FilterChain;
+import com.zhihu.matisse.internal.model.FormatCache;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -50,6 +51,9 @@ public final class PhotoMetadataUtils {
     private static final String FILE_SUPPORTED = "file_supported";
     private static final int MAX_WIDTH = 1600;
     private static final String SCHEME_CONTENT = "content";
+    // containers the picker does not handle
+    private static final int UNSUPPORTED_MASK = MimeType.maskOf(MimeType.of(MimeType.THREEGPP,
+            MimeType.THREEGPP2, MimeType.MKV, MimeType.WEBM, MimeType.TS, MimeType.AVI));
 
     private PhotoMetadataUtils() {
         throw new AssertionError("oops! the utility class is about to be instantiated...");
@@ -62,10 +66,25 @@ public final class PhotoMetadataUtils {
 
     public static Point getBitmapSize(Uri uri, Activity activity) {
         ContentResolver resolver = activity.getContentResolver();
-        Point imageSize = getBitmapBound(resolver, uri);
+        return fitToScreen(getBitmapBound(resolver, uri), shouldRotate(resolver, uri), activity);
+    }
+
+    /**
+     * Same as {@link #getBitmapSize(Uri, Activity)}, from the dimensions and orientation loaded with the item when
+     * the media provider recorded them.
+     */
+    public static Point getBitmapSize(Item item, Activity activity) {
+        ContentResolver resolver = activity.getContentResolver();
+        boolean rotate = item.orientation != Item.ORIENTATION_UNKNOWN
+                ? item.orientation == 90 || item.orientation == 270
+                : shouldRotate(resolver, item.getContentUri());
+        return fitToScreen(getBitmapBound(resolver, item), rotate, activity);
+    }
+
+    private static Point fitToScreen(Point imageSize, boolean rotate, Activity activity) {
         int w = imageSize.x;
         int h = imageSize.y;
-        if (PhotoMetadataUtils.shouldRotate(resolver, uri)) {
+        if (rotate) {
             w = imageSize.y;
             h = imageSize.x;
         }
@@ -105,6 +124,23 @@ public final class PhotoMetadataUtils {
         }
     }
 
+    /**
+     * @return size of the image as stored, taken from the item if the media provider recorded it.
+     */
+    public static Point getBitmapBound(ContentResolver resolver, Item item) {
+        if (item.width > 0 && item.height > 0) {
+            return new Point(item.width, item.height);
+        }
+        return getBitmapBound(resolver, item.getContentUri());
+    }
+
+    public static String getPath(ContentResolver resolver, Item item) {
+        if (item.path != null) {
+            return item.path;
+        }
+        return getPath(resolver, item.getContentUri());
+    }
+
     public static String getPath(ContentResolver resolver, Uri uri) {
         if (uri == null) {
             return null;
@@ -129,21 +165,14 @@ public final class PhotoMetadataUtils {
     }
 
     public static IncapableCause isAcceptable(Context context, Item item) {
-        if (isSelectableType(context, item).equals(FILE_NOT_SUPPORTED_ERROR)) {
+        String selectableType = isSelectableType(context, item);
+        if (selectableType.equals(FILE_NOT_SUPPORTED_ERROR)) {
             return new IncapableCause(context.getString(R.string.error_file_type));
-        } else if (isSelectableType(context, item).equals(FILE_DOES_NOT_EXIST_ERROR)) {
+        } else if (selectableType.equals(FILE_DOES_NOT_EXIST_ERROR)) {
             return new IncapableCause(context.getString(R.string.error_missing_file));
         }
 
-        if (SelectionSpec.getInstance().filters != null) {
-            for (Filter filter : SelectionSpec.getInstance().filters) {
-                IncapableCause incapableCause = filter.filter(context, item);
-                if (incapableCause != null) {
-                    return incapableCause;
-                }
-            }
-        }
-        return null;
+        return FilterChain.getInstance().filter(context, item);
     }
 
     private static String isSelectableType(Context context, Item item) {
@@ -151,19 +180,15 @@ public final class PhotoMetadataUtils {
             return FILE_NOT_SUPPORTED_ERROR;
         }
         ContentResolver resolver = context.getContentResolver();
-        // get full file path here to detect other file unsuppported
-        if (getFileExist(resolver, item.getContentUri())) {
-            String fullPath = PhotoMetadataUtils.getPath(resolver, item.getContentUri());
-            if (fullPath.endsWith("3gp") || fullPath.endsWith("3gpp")
-                    || fullPath.endsWith("mkv") || fullPath.endsWith("webm")
-                    || fullPath.endsWith("ts") || fullPath.endsWith("avi")) {
+        if (getFileExist(resolver, item)) {
+            // the sniffed format if the grid already had it read, no file access here
+            int typeMask = FormatCache.getInstance().typeMaskOf(item);
+            if ((typeMask & UNSUPPORTED_MASK) != 0) {
                 return FILE_NOT_SUPPORTED_ERROR;
             }
 
-            for (MimeType type : SelectionSpec.getInstance().mimeTypeSet) {
-                if (type.checkType(resolver, item.getContentUri())) {
-                    return FILE_SUPPORTED;
-                }
+            if ((typeMask & SelectionSpec.getInstance().mimeTypeMask) != 0) {
+                return FILE_SUPPORTED;
             }
         } else {
             return FILE_DOES_NOT_EXIST_ERROR;
@@ -191,6 +216,13 @@ public final class PhotoMetadataUtils {
         return Float.valueOf(df.format((float) sizeInBytes / 1024 / 1024));
     }
 
+    private static boolean getFileExist(ContentResolver contentResolver, Item item) {
+        if (item.path != null) {
+            return new File(item.path).exists();
+        }
+        return getFileExist(contentResolver, item.getContentUri());
+    }
+
     private static boolean getFileExist(ContentResolver contentResolver, Uri contentUri) {
         String[] projection = { MediaStore.MediaColumns.DATA };
         Cursor cur = contentResolver.query(contentUri, projection, null, null, null);
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zhihu.matisse.listener;
+
+import android.content.Intent;
+import androidx.annotation.NonNull;
+
+/**
+ * Result callback of an embedded {@link com.zhihu.matisse.ui.MatisseFragment}. Implemented by the parent
+ * Fragment or the host Activity.
+ */
+public interface OnResultListener {
+    /**
+     * Called when user finishes selecting.
+     *
+     * @param data the same extras {@link com.zhihu.matisse.ui.MatisseActivity} returns, so that
+     *             {@link com.zhihu.matisse.Matisse#obtainResult(Intent)} and friends can be used on it.
+     */
+    void onResult(@NonNull Intent data);
+}
@@ -24,7 +24,8 @@ import java.util.List;
 public interface OnSelectedListener {
     /**
      * @param uriList the selected item {@link Uri} list.
-     * @param pathList the selected item file path list.
+     * @param pathList the selected item file path list, the paths the media provider listed, null for items it
+     *                 had none for.
      */
     void onSelected(@NonNull List<Uri> uriList, @NonNull List<String> pathList);
 }
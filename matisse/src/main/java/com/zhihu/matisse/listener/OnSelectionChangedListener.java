@@ -0,0 +1,40 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.listener;
+
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+
+import com.zhihu.matisse.SelectedItem;
+
+/**
+ * Told about every item the user selects or deselects while the picker is open, in the grid and in preview,
+ * e.g. to start uploading before Apply. Items the picker was started with are not reported. Called on the main
+ * thread.
+ */
+public interface OnSelectionChangedListener {
+
+    /**
+     * @param item the newly selected item, its path is the one the media provider listed, null if it had none.
+     */
+    void onItemAdded(@NonNull SelectedItem item);
+
+    /**
+     * @param uri {@link SelectedItem#uri} of an item reported by {@link #onItemAdded(SelectedItem)} before.
+     */
+    void onItemRemoved(@NonNull Uri uri);
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.processor;
+
+import android.content.Context;
+
+import androidx.annotation.WorkerThread;
+
+import com.zhihu.matisse.SelectedItem;
+import com.zhihu.matisse.SelectionCreator;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Work done on a media as soon as the user checks it, e.g. hashing or downscaling it, so that it is done or under
+ * way by the time the user applies. Set through
+ * {@link SelectionCreator#setProcessor(Processor, int, long)}, the outputs are handed back with
+ * {@link com.zhihu.matisse.Matisse#obtainProcessedResult(android.content.Intent)}.
+ */
+@SuppressWarnings("unused")
+public abstract class Processor {
+
+    /**
+     * Processes {@code item} into {@code output}. Called on a background thread, possibly for several items at
+     * once. The thread is interrupted when the user unchecks the item, long running work should check
+     * {@link Thread#isInterrupted()} and give up.
+     *
+     * @param context Application context.
+     * @param item    The checked media, with what the picker knows of it.
+     * @param output  File to write to, in the cache directory of the app. Deleted if this throws.
+     * @throws IOException if the media cannot be processed, the host then gets no output for it.
+     */
+    @WorkerThread
+    public abstract void process(Context context, SelectedItem item, File output) throws IOException;
+}
@@ -29,7 +29,6 @@ import android.database.Cursor;
 import android.graphics.PorterDuff;
 import android.graphics.drawable.Drawable;
 import android.media.ExifInterface;
-import android.media.MediaMetadataRetriever;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
@@ -39,10 +38,12 @@ import android.provider.MediaStore;
 import android.view.ViewGroup;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.ViewModelProvider;
 import androidx.appcompat.app.ActionBar;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 
+import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.webkit.MimeTypeMap;
@@ -54,23 +55,33 @@ import com.zhihu.matisse.R;
 import com.zhihu.matisse.internal.entity.Album;
 import com.zhihu.matisse.internal.entity.Item;
 import com.zhihu.matisse.internal.entity.SelectionSpec;
+import com.zhihu.matisse.internal.entity.VideoInfo;
 import com.zhihu.matisse.internal.loader.AlbumMediaLoader;
 import com.zhihu.matisse.internal.model.AlbumCollection;
+import com.zhihu.matisse.internal.model.ProcessingPipeline;
+import com.zhihu.matisse.internal.model.ResultAssembler;
+import com.zhihu.matisse.internal.model.VideoProbe;
 import com.zhihu.matisse.internal.model.SelectedItemCollection;
 import com.zhihu.matisse.internal.ui.AlbumPreviewActivity;
 import com.zhihu.matisse.internal.ui.BasePreviewActivity;
 import com.zhihu.matisse.internal.ui.MediaSelectionFragment;
+import com.zhihu.matisse.internal.ui.PickerHelper;
+import com.zhihu.matisse.internal.ui.ResultAssemblyModel;
 import com.zhihu.matisse.internal.ui.SelectedPreviewActivity;
 import com.zhihu.matisse.internal.ui.adapter.AlbumMediaAdapter;
 import com.zhihu.matisse.internal.ui.adapter.AlbumsAdapter;
+import com.zhihu.matisse.internal.ui.adapter.MediaGridPool;
 import com.zhihu.matisse.internal.ui.widget.AlbumsSpinner;
+import com.zhihu.matisse.internal.ui.widget.ApplyProgressDialog;
+import com.zhihu.matisse.internal.ui.widget.CheckRadioView;
+import com.zhihu.matisse.internal.ui.widget.SortOrderMenu;
 import com.zhihu.matisse.internal.utils.MediaStoreCompat;
-import com.zhihu.matisse.internal.utils.PathUtils;
 
 import java.io.File;
 import java.io.IOException;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Main Activity to display albums and media content (images/videos) in each album
@@ -84,7 +95,13 @@ public class MatisseActivity extends AppCompatActivity implements
 
     public static final String EXTRA_RESULT_SELECTION = "extra_result_selection";
     public static final String EXTRA_RESULT_SELECTION_PATH = "extra_result_selection_path";
+    public static final String EXTRA_RESULT_SELECTION_ITEMS = "extra_result_selection_items";
+    public static final String EXTRA_RESULT_PROCESSED_PATH = "extra_result_processed_path";
     public static final String EXTRA_RESULT_DELETED_ITEM_COUNT = "extra_result_deleted_item_count";
+    public static final String EXTRA_RESULT_UNSTRIPPED_ITEM_COUNT = "extra_result_unstripped_item_count";
+    public static final String EXTRA_RESULT_ORIGINAL_ENABLE = "extra_result_original_enable";
+    public static final String EXTRA_RESULT_DIGESTS = "extra_result_digests";
+    static final String STATE_ORIGINAL_ENABLE = "state_original_enable";
     private static final int REQUEST_CODE_PREVIEW = 23;
     private static final int REQUEST_CODE_CAPTURE = 24;
     private static final int REQUEST_CODE_CAPTURE_IMAGE = 25;
@@ -93,17 +110,53 @@ public class MatisseActivity extends AppCompatActivity implements
     private final AlbumCollection mAlbumCollection = new AlbumCollection();
     private MediaStoreCompat mMediaStoreCompat;
     private SelectedItemCollection mSelectedCollection = new SelectedItemCollection(this);
+    private final MediaGridPool mMediaGridPool = new MediaGridPool();
     private SelectionSpec mSpec;
 
     private AlbumsSpinner mAlbumsSpinner;
     private AlbumsAdapter mAlbumsAdapter;
     private TextView mButtonPreview;
     private TextView mButtonApply;
+    private CheckRadioView mOriginal;
+    private boolean mOriginalEnable;
     private View mContainer;
     private View mEmptyView;
     private ContentObserver mObserver;
     private Handler mHandler;
     private Album mAlbum;
+    private ResultAssemblyModel mAssembly;
+    private ApplyProgressDialog mApplyProgress;
+    private final ResultAssembler.Callback mAssemblyCallback = new ResultAssembler.Callback() {
+        @Override
+        public void onProgress(int done, int total) {
+            if (mApplyProgress != null) {
+                mApplyProgress.setProgress(done, total);
+            }
+        }
+
+        @Override
+        public void onAssembled(ResultAssembler.Result assembled) {
+            if (mApplyProgress != null) {
+                mApplyProgress.dismiss();
+                mApplyProgress = null;
+            }
+            boolean validate = mAssembly.isValidating();
+            if (validate && assembled.brokenCount > 0) {
+                Resources res = getResources();
+                String alert_title = res.getQuantityString(R.plurals.alert_title_unsupport_items,
+                        assembled.brokenCount, assembled.brokenCount);
+                new AlertDialog.Builder(MatisseActivity.this)
+                        .setMessage(alert_title)
+                        .setPositiveButton(android.R.string.yes, null)
+                        .show();
+                return;
+            }
+
+            Intent result = PickerHelper.resultOf(assembled, mOriginalEnable, validate);
+            setResult(RESULT_OK, result);
+            finish();
+        }
+    };
     private Boolean isDontShow = false;
 
     @Override
@@ -121,6 +174,13 @@ public class MatisseActivity extends AppCompatActivity implements
             return;
         }
         setContentView(R.layout.activity_matisse);
+        // an assembly started before a configuration change is still running, pick up its progress
+        mAssembly = new ViewModelProvider(this, new ViewModelProvider.NewInstanceFactory())
+                .get(ResultAssemblyModel.class);
+        if (mAssembly.isRunning()) {
+            showApplyProgress();
+        }
+        mAssembly.attach(mAssemblyCallback);
 
         if (mSpec.needOrientationRestriction()) {
             setRequestedOrientation(mSpec.orientation);
@@ -161,6 +221,14 @@ public class MatisseActivity extends AppCompatActivity implements
         mButtonApply = (TextView) findViewById(R.id.button_apply);
         mButtonPreview.setOnClickListener(this);
         mButtonApply.setOnClickListener(this);
+        View originalLayout = findViewById(R.id.original_layout);
+        originalLayout.setVisibility(mSpec.showOriginal() ? View.VISIBLE : View.GONE);
+        originalLayout.setOnClickListener(this);
+        mOriginal = findViewById(R.id.original);
+        if (savedInstanceState != null) {
+            mOriginalEnable = savedInstanceState.getBoolean(STATE_ORIGINAL_ENABLE);
+        }
+        mOriginal.setChecked(mOriginalEnable);
         mContainer = findViewById(R.id.container);
         mEmptyView = findViewById(R.id.empty_view);
 
@@ -188,12 +256,34 @@ public class MatisseActivity extends AppCompatActivity implements
         super.onSaveInstanceState(outState);
         mSelectedCollection.onSaveInstanceState(outState);
         mAlbumCollection.onSaveInstanceState(outState);
+        outState.putBoolean(STATE_ORIGINAL_ENABLE, mOriginalEnable);
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
         mAlbumCollection.onDestroy();
+        if (mApplyProgress != null) {
+            mApplyProgress.dismiss();
+            mApplyProgress = null;
+        }
+        if (mAssembly != null) {
+            mAssembly.detach();
+        }
+        if (isFinishing()) {
+            cancelResultAssembly();
+            // closed without a result, nothing will ask for the outputs
+            ProcessingPipeline.getInstance().cancelAll();
+        }
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        if (mSpec.showSortMenu) {
+            getMenuInflater().inflate(R.menu.matisse_sort, menu);
+            SortOrderMenu.check(menu, mSpec.sortOrder);
+        }
+        return super.onCreateOptionsMenu(menu);
     }
 
     @Override
@@ -202,6 +292,9 @@ public class MatisseActivity extends AppCompatActivity implements
             onBackPressed();
             return true;
         }
+        if (PickerHelper.onSortItemSelected(item, getSupportFragmentManager())) {
+            return true;
+        }
         return super.onOptionsItemSelected(item);
     }
 
@@ -223,25 +316,13 @@ public class MatisseActivity extends AppCompatActivity implements
             int collectionType = resultBundle.getInt(SelectedItemCollection.STATE_COLLECTION_TYPE,
                     SelectedItemCollection.COLLECTION_UNDEFINED);
             if (data.getBooleanExtra(BasePreviewActivity.EXTRA_RESULT_APPLY, false)) {
-                Intent result = new Intent();
-                ArrayList<Uri> selectedUris = new ArrayList<>();
-                ArrayList<String> selectedPaths = new ArrayList<>();
-                if (selected != null) {
-                    for (Item item : selected) {
-                        selectedUris.add(item.getContentUri());
-                        selectedPaths.add(PathUtils.getPath(this, item.getContentUri()));
-                    }
-                }
-                result.putParcelableArrayListExtra(EXTRA_RESULT_SELECTION, selectedUris);
-                result.putStringArrayListExtra(EXTRA_RESULT_SELECTION_PATH, selectedPaths);
-                setResult(RESULT_OK, result);
-                finish();
+                assembleResult(selected != null ? selected : new ArrayList<Item>(), false);
             } else {
                 mSelectedCollection.overwrite(selected, collectionType);
-                Fragment mediaSelectionFragment = getSupportFragmentManager().findFragmentByTag(
-                        MediaSelectionFragment.class.getSimpleName());
-                if (mediaSelectionFragment instanceof MediaSelectionFragment) {
-                    ((MediaSelectionFragment) mediaSelectionFragment).refreshMediaGrid();
+                MediaSelectionFragment mediaSelectionFragment =
+                        PickerHelper.findMediaSelection(getSupportFragmentManager());
+                if (mediaSelectionFragment != null) {
+                    mediaSelectionFragment.refreshMediaGrid();
                 }
                 updateBottomToolbar();
             }
@@ -336,8 +417,10 @@ public class MatisseActivity extends AppCompatActivity implements
         values.put(MediaStore.Images.Media.DATA, filepath.toString());
         if(exifInterface != null) {
             values.put(MediaStore.Images.Media.ORIENTATION, getOrientation(exifInterface));
-            values.put(MediaStore.Images.Media.LATITUDE, exifInterface.getAttribute(ExifInterface.TAG_GPS_LATITUDE));
-            values.put(MediaStore.Images.Media.LONGITUDE, exifInterface.getAttribute(ExifInterface.TAG_GPS_LONGITUDE));
+            if (!mSpec.stripMetadata) {
+                values.put(MediaStore.Images.Media.LATITUDE, exifInterface.getAttribute(ExifInterface.TAG_GPS_LATITUDE));
+                values.put(MediaStore.Images.Media.LONGITUDE, exifInterface.getAttribute(ExifInterface.TAG_GPS_LONGITUDE));
+            }
         }
         return cr.insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
     }
@@ -357,18 +440,17 @@ public class MatisseActivity extends AppCompatActivity implements
         values.put(MediaStore.Video.Media.DATE_ADDED, System.currentTimeMillis());
         values.put(MediaStore.Video.Media.DATE_TAKEN, System.currentTimeMillis());
         values.put(MediaStore.Video.Media.DATA, filepath.toString());
-        if(exifInterface != null) {
-            MediaMetadataRetriever mediaMetadataRetriever = new MediaMetadataRetriever();
-            mediaMetadataRetriever.setDataSource(this, Uri.parse(filepath.getAbsolutePath()));
-
-            String duration = mediaMetadataRetriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
-            values.put(MediaStore.Video.Media.DURATION, duration);
+        if(exifInterface != null && !mSpec.stripMetadata) {
             values.put(MediaStore.Video.Media.LATITUDE, exifInterface.getAttribute(ExifInterface.TAG_GPS_LATITUDE));
             values.put(MediaStore.Video.Media.LONGITUDE, exifInterface.getAttribute(ExifInterface.TAG_GPS_LONGITUDE));
-
         }
 
-        return cr.insert(MediaStore.Video.Media.EXTERNAL_CONTENT_URI, values);
+        Uri uri = cr.insert(MediaStore.Video.Media.EXTERNAL_CONTENT_URI, values);
+        if (uri != null) {
+            // probing reads the whole header, not on the main thread
+            VideoProbe.getInstance().fillDuration(this, filepath, uri);
+        }
+        return uri;
     }
 
     /**
@@ -447,14 +529,17 @@ public class MatisseActivity extends AppCompatActivity implements
             startActivityForResult(intent, REQUEST_CODE_PREVIEW);
         } else if (v.getId() == R.id.button_apply) {
             this.onFinishSelection();
+        } else if (v.getId() == R.id.original_layout) {
+            mOriginalEnable = !mOriginalEnable;
+            mOriginal.setChecked(mOriginalEnable);
         }
     }
 
     @Override
     public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
-        mAlbumCollection.setStateCurrentSelection(position);
         mAlbumsAdapter.getCursor().moveToPosition(position);
         Album album = Album.valueOf(mAlbumsAdapter.getCursor());
+        mAlbumCollection.setStateCurrentSelection(position, album.getId());
         if (album.isAll() && SelectionSpec.getInstance().capture) {
             album.addCaptureCount();
         }
@@ -467,7 +552,7 @@ public class MatisseActivity extends AppCompatActivity implements
     }
 
     @Override
-    public void onAlbumLoad(final Cursor cursor) {
+    public void onAlbumLoad(Cursor cursor) {
         mAlbumsAdapter.swapCursor(cursor);
         // select default album.
         Handler handler = new Handler(Looper.getMainLooper());
@@ -475,6 +560,11 @@ public class MatisseActivity extends AppCompatActivity implements
 
             @Override
             public void run() {
+                // a newer partial list may have replaced and closed the delivered one meanwhile
+                Cursor cursor = mAlbumsAdapter.getCursor();
+                if (cursor == null) {
+                    return;
+                }
                 cursor.moveToPosition(mAlbumCollection.getCurrentSelection());
                 mAlbumsSpinner.setSelection(MatisseActivity.this,
                         mAlbumCollection.getCurrentSelection());
@@ -487,6 +577,11 @@ public class MatisseActivity extends AppCompatActivity implements
         });
     }
 
+    @Override
+    public void onAlbumUpdate(Cursor cursor) {
+        mAlbumsAdapter.swapCursor(cursor);
+    }
+
     @Override
     public void onAlbumReset() {
         mAlbumsAdapter.swapCursor(null);
@@ -509,59 +604,56 @@ public class MatisseActivity extends AppCompatActivity implements
     }
 
     private void onFinishSelection() {
-        Intent result = new Intent();
-
-        ArrayList<Uri> selectedUris = (ArrayList<Uri>) mSelectedCollection.asListOfUri();
-        ArrayList<String> selectedPaths = (ArrayList<String>) mSelectedCollection.asListOfString();
-
-        int brokenItems = 0;
-        int removedItems = 0;
-        for (int i = selectedUris.size()-1; i >= 0; i--){
-            if (getMimeType(MatisseActivity.this, selectedUris.get(i)) != null) {
-                String mimeType = getMimeType(MatisseActivity.this, selectedUris.get(i));
-                if (mimeType.contains("video")) {
-                    //precheck
-                    MediaMetadataRetriever mediaMetadataRetriever = new MediaMetadataRetriever();
-                    mediaMetadataRetriever.setDataSource(this, selectedUris.get(i));
-                    long durationMs = 0;
-                    String duration = mediaMetadataRetriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
-                    if (duration != null) {
-                        durationMs = Long.parseLong(duration);
-                    }
-                    if (durationMs <= 0) {
-                        //prompt
-                        brokenItems++;
-                    }
-                }
-            } else {
-                selectedPaths.remove(i);
-                selectedUris.remove(i);
-                removedItems++;
-            }
-        }
-
-        if(brokenItems > 0) {
+        assembleResult(mSelectedCollection.asList(), true);
+    }
 
-            Resources res = getResources();
-            String alert_title = res.getQuantityString(R.plurals.alert_title_unsupport_items, brokenItems, brokenItems);
-            new AlertDialog.Builder(this)
-                    .setMessage(alert_title)
-                    .setPositiveButton(android.R.string.yes, null)
-                    .show();
+    /**
+     * Hands {@code items} back to the caller once their uris and paths are worked out in the background.
+     *
+     * @param validate whether to leave out the items gone and hold back unplayable videos.
+     */
+    private void assembleResult(List<Item> items, boolean validate) {
+        if (mAssembly.isRunning()) {
             return;
         }
+        MediaSelectionFragment mediaSelectionFragment = PickerHelper.findMediaSelection(getSupportFragmentManager());
+        if (mediaSelectionFragment != null) {
+            mediaSelectionFragment.handOffThumbnails();
+        }
+        showApplyProgress();
+        mAssembly.start(this, items, validate, mOriginalEnable);
+    }
+
+    private void showApplyProgress() {
+        mApplyProgress = new ApplyProgressDialog(this, new Runnable() {
+            @Override
+            public void run() {
+                cancelResultAssembly();
+            }
+        });
+        mApplyProgress.show();
+    }
 
-        result.putParcelableArrayListExtra(EXTRA_RESULT_SELECTION, selectedUris);
-        result.putStringArrayListExtra(EXTRA_RESULT_SELECTION_PATH, selectedPaths);
-        result.putExtra(EXTRA_RESULT_DELETED_ITEM_COUNT, removedItems);
-        setResult(RESULT_OK, result);
-        finish();
+    private void cancelResultAssembly() {
+        if (mAssembly != null) {
+            mAssembly.cancel();
+        }
+        if (mApplyProgress != null) {
+            mApplyProgress.dismiss();
+            mApplyProgress = null;
+        }
     }
 
     @Override
     public void onUpdate(Item item) {
         if (item.mimeType.equals(MimeType.MP4.toString())) {
-            if (!mSpec.isDontShowVideoAlert && mSpec.hasFeatureEnabled && (item.duration/1000) > mSpec.maxVideoLength) {
+            VideoInfo info = VideoProbe.getInstance().peek(this, item);
+            if (info == null && mSelectedCollection.isSelected(item)) {
+                // no duration in the media provider, have it probed before Apply needs it
+                VideoProbe.getInstance().prefetch(this, item);
+            }
+            long duration = info != null ? info.duration : item.duration;
+            if (!mSpec.isDontShowVideoAlert && mSpec.hasFeatureEnabled && (duration/1000) > mSpec.maxVideoLength) {
                 new android.app.AlertDialog.Builder(this).
                         setTitle(mSpec.alertTitle).
                         setMessage(String.format(mSpec.alertBody, mSpec.maxVideoLength)).
@@ -606,6 +698,11 @@ public class MatisseActivity extends AppCompatActivity implements
         return mSelectedCollection;
     }
 
+    @Override
+    public MediaGridPool provideMediaGridPool() {
+        return mMediaGridPool;
+    }
+
     @Override
     public void capture() {
         if (mMediaStoreCompat != null) {
@@ -0,0 +1,428 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.ui;
+
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.LayoutInflater;
+import android.view.MenuItem;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.appcompat.view.ContextThemeWrapper;
+import androidx.appcompat.widget.Toolbar;
+import androidx.fragment.app.Fragment;
+import androidx.lifecycle.ViewModelProvider;
+
+import com.zhihu.matisse.R;
+import com.zhihu.matisse.internal.entity.Album;
+import com.zhihu.matisse.internal.entity.Item;
+import com.zhihu.matisse.internal.entity.SelectionSpec;
+import com.zhihu.matisse.internal.model.AlbumCollection;
+import com.zhihu.matisse.internal.model.ProcessingPipeline;
+import com.zhihu.matisse.internal.model.ResultAssembler;
+import com.zhihu.matisse.internal.model.SelectedItemCollection;
+import com.zhihu.matisse.internal.ui.AlbumPreviewActivity;
+import com.zhihu.matisse.internal.ui.BasePreviewActivity;
+import com.zhihu.matisse.internal.ui.MediaSelectionFragment;
+import com.zhihu.matisse.internal.ui.PickerHelper;
+import com.zhihu.matisse.internal.ui.ResultAssemblyModel;
+import com.zhihu.matisse.internal.ui.SelectedPreviewActivity;
+import com.zhihu.matisse.internal.ui.adapter.AlbumMediaAdapter;
+import com.zhihu.matisse.internal.ui.adapter.AlbumsAdapter;
+import com.zhihu.matisse.internal.ui.adapter.MediaGridPool;
+import com.zhihu.matisse.internal.ui.widget.AlbumsSpinner;
+import com.zhihu.matisse.internal.ui.widget.ApplyProgressDialog;
+import com.zhihu.matisse.internal.ui.widget.CheckRadioView;
+import com.zhihu.matisse.internal.ui.widget.SortOrderMenu;
+import com.zhihu.matisse.listener.OnResultListener;
+
+import java.util.ArrayList;
+
+/**
+ * Embeddable counterpart of {@link MatisseActivity}. It runs the same album, grid and selection machinery
+ * inside the host's own Activity, e.g. in a bottom sheet, and delivers the result through
+ * {@link OnResultListener} instead of {@link android.app.Activity#onActivityResult(int, int, Intent)}.
+ * <p>
+ * The loaders live in this Fragment's own LoaderManager, so they never collide with the host's and survive
+ * the view being torn down while the Fragment sits on the back stack. The albums scanned last are kept for the
+ * process, see {@link com.zhihu.matisse.internal.model.AlbumRepository}, so a new picker shows them at once.
+ * Photo capturing is not available in this mode.
+ */
+public class MatisseFragment extends Fragment implements
+        AlbumCollection.AlbumCallbacks, AdapterView.OnItemSelectedListener,
+        MediaSelectionFragment.SelectionProvider, View.OnClickListener,
+        AlbumMediaAdapter.CheckStateListener, AlbumMediaAdapter.OnMediaClickListener {
+
+    private static final int REQUEST_CODE_PREVIEW = 23;
+
+    private final AlbumCollection mAlbumCollection = new AlbumCollection();
+    private SelectedItemCollection mSelectedCollection;
+    private final MediaGridPool mMediaGridPool = new MediaGridPool();
+    private SelectionSpec mSpec;
+    private OnResultListener mOnResultListener;
+
+    private AlbumsSpinner mAlbumsSpinner;
+    private AlbumsAdapter mAlbumsAdapter;
+    private TextView mButtonPreview;
+    private TextView mButtonApply;
+    private CheckRadioView mOriginal;
+    private boolean mOriginalEnable;
+    private View mContainer;
+    private View mEmptyView;
+    private Context mThemedContext;
+    private ResultAssemblyModel mAssembly;
+    private ApplyProgressDialog mApplyProgress;
+    private final ResultAssembler.Callback mAssemblyCallback = new ResultAssembler.Callback() {
+        @Override
+        public void onProgress(int done, int total) {
+            if (mApplyProgress != null) {
+                mApplyProgress.setProgress(done, total);
+            }
+        }
+
+        @Override
+        public void onAssembled(ResultAssembler.Result assembled) {
+            if (mApplyProgress != null) {
+                mApplyProgress.dismiss();
+                mApplyProgress = null;
+            }
+            mOnResultListener.onResult(PickerHelper.resultOf(assembled, mOriginalEnable, false));
+        }
+    };
+
+    public static MatisseFragment newInstance(@Nullable ArrayList<Item> selection) {
+        MatisseFragment fragment = new MatisseFragment();
+        Bundle args = new Bundle();
+        args.putParcelableArrayList(SelectedItemCollection.STATE_SELECTION, selection);
+        fragment.setArguments(args);
+        return fragment;
+    }
+
+    @Override
+    public void onAttach(Context context) {
+        super.onAttach(context);
+        Object host = getParentFragment() != null ? getParentFragment() : context;
+        if (host instanceof OnResultListener) {
+            mOnResultListener = (OnResultListener) host;
+        } else {
+            throw new IllegalStateException("Host must implement OnResultListener.");
+        }
+    }
+
+    @Override
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        mSpec = SelectionSpec.getInstance();
+        mThemedContext = new ContextThemeWrapper(requireContext(), mSpec.themeId);
+        mSelectedCollection = new SelectedItemCollection(mThemedContext);
+        mSelectedCollection.onCreate(savedInstanceState);
+        if (savedInstanceState == null && getArguments() != null) {
+            ArrayList<Item> selectionItems =
+                    getArguments().getParcelableArrayList(SelectedItemCollection.STATE_SELECTION);
+            if (selectionItems != null) {
+                mSelectedCollection.setDefaultSelection(selectionItems);
+            }
+        }
+    }
+
+    @Nullable
+    @Override
+    public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container,
+                             @Nullable Bundle savedInstanceState) {
+        return inflater.cloneInContext(mThemedContext).inflate(R.layout.activity_matisse, container, false);
+    }
+
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        if (!mSpec.hasInited) {
+            // the selection spec is gone with the process, there is nothing to show.
+            return;
+        }
+        // an assembly started before a configuration change is still running, pick up its progress
+        mAssembly = new ViewModelProvider(this, new ViewModelProvider.NewInstanceFactory())
+                .get(ResultAssemblyModel.class);
+        if (mAssembly.isRunning()) {
+            showApplyProgress();
+        }
+        mAssembly.attach(mAssemblyCallback);
+
+        View bottomToolbar = view.findViewById(R.id.bottom_toolbar);
+        bottomToolbar.setVisibility(mSpec.allowsMultipleSelection ? View.VISIBLE : View.GONE);
+        mButtonPreview = view.findViewById(R.id.button_preview);
+        mButtonPreview.setVisibility(mSpec.enablePreview ? View.VISIBLE : View.GONE);
+        mButtonApply = view.findViewById(R.id.button_apply);
+        mButtonPreview.setOnClickListener(this);
+        mButtonApply.setOnClickListener(this);
+        View originalLayout = view.findViewById(R.id.original_layout);
+        originalLayout.setVisibility(mSpec.showOriginal() ? View.VISIBLE : View.GONE);
+        originalLayout.setOnClickListener(this);
+        mOriginal = view.findViewById(R.id.original);
+        if (savedInstanceState != null) {
+            mOriginalEnable = savedInstanceState.getBoolean(MatisseActivity.STATE_ORIGINAL_ENABLE);
+        }
+        mOriginal.setChecked(mOriginalEnable);
+        mContainer = view.findViewById(R.id.container);
+        mEmptyView = view.findViewById(R.id.empty_view);
+        updateBottomToolbar();
+
+        mAlbumsAdapter = new AlbumsAdapter(mThemedContext, null, false);
+        mAlbumsSpinner = new AlbumsSpinner(mThemedContext);
+        mAlbumsSpinner.setOnItemSelectedListener(this);
+        mAlbumsSpinner.setSelectedTextView((TextView) view.findViewById(R.id.selected_album));
+        mAlbumsSpinner.setPopupAnchorView(view.findViewById(R.id.toolbar));
+        mAlbumsSpinner.setAdapter(mAlbumsAdapter);
+        if (mSpec.showSortMenu) {
+            setUpSortMenu((Toolbar) view.findViewById(R.id.toolbar));
+        }
+        mAlbumCollection.onCreate(this, this);
+        mAlbumCollection.onRestoreInstanceState(savedInstanceState);
+        mAlbumCollection.loadAlbums();
+    }
+
+    private void setUpSortMenu(Toolbar toolbar) {
+        toolbar.inflateMenu(R.menu.matisse_sort);
+        SortOrderMenu.check(toolbar.getMenu(), mSpec.sortOrder);
+        toolbar.setOnMenuItemClickListener(new Toolbar.OnMenuItemClickListener() {
+            @Override
+            public boolean onMenuItemClick(MenuItem item) {
+                return PickerHelper.onSortItemSelected(item, getChildFragmentManager());
+            }
+        });
+    }
+
+    @Override
+    public void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        mSelectedCollection.onSaveInstanceState(outState);
+        mAlbumCollection.onSaveInstanceState(outState);
+        outState.putBoolean(MatisseActivity.STATE_ORIGINAL_ENABLE, mOriginalEnable);
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (mApplyProgress != null) {
+            mApplyProgress.dismiss();
+            mApplyProgress = null;
+        }
+        if (mAssembly != null) {
+            mAssembly.detach();
+        }
+        if (isRemoving() || requireActivity().isFinishing()) {
+            cancelResultAssembly();
+            // removed or closed without a result, nothing will ask for the outputs
+            ProcessingPipeline.getInstance().cancelAll();
+        }
+        if (mAlbumsAdapter == null) {
+            return;
+        }
+        // the loader goes with this fragment, the albums it scanned stay in AlbumRepository
+        mAlbumCollection.onDetach();
+        mAlbumsAdapter.swapCursor(null);
+    }
+
+    @Override
+    public void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode != REQUEST_CODE_PREVIEW || resultCode != android.app.Activity.RESULT_OK) {
+            return;
+        }
+        Bundle resultBundle = data.getBundleExtra(BasePreviewActivity.EXTRA_RESULT_BUNDLE);
+        ArrayList<Item> selected = resultBundle.getParcelableArrayList(SelectedItemCollection.STATE_SELECTION);
+        int collectionType = resultBundle.getInt(SelectedItemCollection.STATE_COLLECTION_TYPE,
+                SelectedItemCollection.COLLECTION_UNDEFINED);
+        mSelectedCollection.overwrite(selected, collectionType);
+        if (data.getBooleanExtra(BasePreviewActivity.EXTRA_RESULT_APPLY, false)) {
+            onFinishSelection();
+        } else {
+            MediaSelectionFragment mediaSelectionFragment = PickerHelper.findMediaSelection(getChildFragmentManager());
+            if (mediaSelectionFragment != null) {
+                mediaSelectionFragment.refreshMediaGrid();
+            }
+            updateBottomToolbar();
+        }
+    }
+
+    private void updateBottomToolbar() {
+        int selectedCount = mSelectedCollection.count();
+        if (selectedCount == 0) {
+            mButtonPreview.setEnabled(false);
+            mButtonApply.setEnabled(false);
+            mButtonApply.setText(getString(R.string.button_apply_default));
+        } else if (selectedCount == 1) {
+            mButtonPreview.setEnabled(true);
+            mButtonApply.setText(R.string.button_apply_default);
+            mButtonApply.setEnabled(true);
+            if (!mSpec.allowsMultipleSelection && !mSpec.showPreview) {
+                // no preview on select -> finish selection
+                onFinishSelection();
+            }
+        } else {
+            mButtonPreview.setEnabled(true);
+            mButtonApply.setEnabled(true);
+            mButtonApply.setText(getString(R.string.button_apply, selectedCount));
+        }
+    }
+
+    private void onFinishSelection() {
+        if (mAssembly.isRunning()) {
+            return;
+        }
+        MediaSelectionFragment mediaSelectionFragment = PickerHelper.findMediaSelection(getChildFragmentManager());
+        if (mediaSelectionFragment != null) {
+            mediaSelectionFragment.handOffThumbnails();
+        }
+        showApplyProgress();
+        // paths are looked up in the background, the result is handed over once all are known
+        mAssembly.start(requireContext(), mSelectedCollection.asList(), false, mOriginalEnable);
+    }
+
+    private void showApplyProgress() {
+        mApplyProgress = new ApplyProgressDialog(mThemedContext, new Runnable() {
+            @Override
+            public void run() {
+                cancelResultAssembly();
+            }
+        });
+        mApplyProgress.show();
+    }
+
+    private void cancelResultAssembly() {
+        if (mAssembly != null) {
+            mAssembly.cancel();
+        }
+        if (mApplyProgress != null) {
+            mApplyProgress.dismiss();
+            mApplyProgress = null;
+        }
+    }
+
+    @Override
+    public void onClick(View v) {
+        if (v.getId() == R.id.button_preview) {
+            Intent intent = new Intent(getContext(), SelectedPreviewActivity.class);
+            intent.putExtra(BasePreviewActivity.EXTRA_DEFAULT_BUNDLE, mSelectedCollection.getDataWithBundle());
+            startActivityForResult(intent, REQUEST_CODE_PREVIEW);
+        } else if (v.getId() == R.id.button_apply) {
+            onFinishSelection();
+        } else if (v.getId() == R.id.original_layout) {
+            mOriginalEnable = !mOriginalEnable;
+            mOriginal.setChecked(mOriginalEnable);
+        }
+    }
+
+    @Override
+    public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+        mAlbumsAdapter.getCursor().moveToPosition(position);
+        Album album = Album.valueOf(mAlbumsAdapter.getCursor());
+        mAlbumCollection.setStateCurrentSelection(position, album.getId());
+        onAlbumSelected(album);
+    }
+
+    @Override
+    public void onNothingSelected(AdapterView<?> parent) {
+
+    }
+
+    @Override
+    public void onAlbumLoad(Cursor cursor) {
+        mAlbumsAdapter.swapCursor(cursor);
+        // select default album.
+        Handler handler = new Handler(Looper.getMainLooper());
+        handler.post(new Runnable() {
+
+            @Override
+            public void run() {
+                if (getView() == null) {
+                    return;
+                }
+                // a newer partial list may have replaced and closed the delivered one meanwhile
+                Cursor cursor = mAlbumsAdapter.getCursor();
+                if (cursor == null) {
+                    return;
+                }
+                cursor.moveToPosition(mAlbumCollection.getCurrentSelection());
+                mAlbumsSpinner.setSelection(mThemedContext, mAlbumCollection.getCurrentSelection());
+                onAlbumSelected(Album.valueOf(cursor));
+            }
+        });
+    }
+
+    @Override
+    public void onAlbumUpdate(Cursor cursor) {
+        mAlbumsAdapter.swapCursor(cursor);
+    }
+
+    @Override
+    public void onAlbumReset() {
+        mAlbumsAdapter.swapCursor(null);
+    }
+
+    private void onAlbumSelected(Album album) {
+        if (album.isAll() && album.isEmpty()) {
+            mContainer.setVisibility(View.GONE);
+            mEmptyView.setVisibility(View.VISIBLE);
+        } else {
+            mContainer.setVisibility(View.VISIBLE);
+            mEmptyView.setVisibility(View.GONE);
+            Fragment fragment = MediaSelectionFragment.newInstance(album, false);
+            getChildFragmentManager()
+                    .beginTransaction()
+                    .replace(R.id.container, fragment, MediaSelectionFragment.class.getSimpleName())
+                    .commitAllowingStateLoss();
+        }
+    }
+
+    @Override
+    public void onUpdate(Item item) {
+        // notify bottom toolbar that check state changed.
+        updateBottomToolbar();
+    }
+
+    @Override
+    public void onMediaClick(Album album, Item item, int adapterPosition, AlbumMediaAdapter adapter) {
+        Intent intent = new Intent(getContext(), AlbumPreviewActivity.class);
+        intent.putExtra(AlbumPreviewActivity.EXTRA_ALBUM, album);
+        intent.putExtra(AlbumPreviewActivity.EXTRA_ITEM, item);
+        if (!mSpec.allowsMultipleSelection && !mSelectedCollection.isSelected(item)) {
+            mSelectedCollection.clear();
+            // select new item and go to preview
+            adapter.updateSelectedItem(item, mThemedContext);
+        }
+        intent.putExtra(BasePreviewActivity.EXTRA_DEFAULT_BUNDLE, mSelectedCollection.getDataWithBundle());
+        startActivityForResult(intent, REQUEST_CODE_PREVIEW);
+    }
+
+    @Override
+    public SelectedItemCollection provideSelectedItemCollection() {
+        return mSelectedCollection;
+    }
+
+    @Override
+    public MediaGridPool provideMediaGridPool() {
+        return mMediaGridPool;
+    }
+}
@@ -46,12 +46,23 @@ class GifSizeFilter extends Filter {
         }};
     }
 
+    @Override
+    public int cost() {
+        // decodes the bounds
+        return COST_EXPENSIVE;
+    }
+
+    @Override
+    public boolean needsIo() {
+        return true;
+    }
+
     @Override
     public IncapableCause filter(Context context, Item item) {
         if (!needFiltering(context, item))
             return null;
 
-        Point size = PhotoMetadataUtils.getBitmapBound(context.getContentResolver(), item.getContentUri());
+        Point size = PhotoMetadataUtils.getBitmapBound(context.getContentResolver(), item);
         if (size.x < mMinWidth || size.y < mMinHeight || item.size > mMaxSize) {
             return new IncapableCause(IncapableCause.DIALOG, context.getString(R.string.error_gif, mMinWidth,
                     String.valueOf(PhotoMetadataUtils.getSizeInMB(mMaxSize))));